@@ -192,6 +192,10 @@ android {
 
 dependencies {
 
+    // Price engine; Android already ships org.json, so leave out the JVM copy core uses
+    implementation(project(":core")) {
+        exclude(group = "com.vaadin.external.google", module = "android-json")
+    }
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.activity)
@@ -0,0 +1,89 @@
+package com.fiospace.bitcointicker;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.core.content.ContextCompat;
+
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.Locale;
+
+/**
+ * Thin bar showing the best bid and ask over the bid/ask size balance of the top of the book: the
+ * green share is the bid side's resting size, the red share the ask side's.
+ */
+public class DepthBarView extends View {
+    private final Paint bidPaint = new Paint();
+    private final Paint askPaint = new Paint();
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final NumberFormat usd = NumberFormat.getCurrencyInstance(Locale.getDefault());
+    private String label = "";
+    // Bid share of the combined size, 0..1
+    private float bidFraction = 0.5f;
+
+    public DepthBarView(Context context) {
+        super(context);
+        init(context);
+    }
+
+    public DepthBarView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(context);
+    }
+
+    public DepthBarView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        init(context);
+    }
+
+    private void init(Context context) {
+        bidPaint.setColor(ContextCompat.getColor(context, R.color.green));
+        bidPaint.setAlpha(0x80);
+        askPaint.setColor(ContextCompat.getColor(context, R.color.red));
+        askPaint.setAlpha(0x80);
+        textPaint.setColor(ContextCompat.getColor(context, R.color.white));
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        usd.setCurrency(Currency.getInstance(CurrencyConverter.USD));
+    }
+
+    /**
+     * Shows the given book, summing sizes over at most {@code levels} levels per side.
+     */
+    public void setBook(String exchange, OrderBook book, int levels) {
+        if (book.isEmpty()) {
+            label = exchange + " depth: syncing";
+            bidFraction = 0.5f;
+        } else {
+            long bidSize = book.getCumulativeSize(true, levels);
+            long askSize = book.getCumulativeSize(false, levels);
+            bidFraction = bidSize + askSize > 0 ? (float) bidSize / (bidSize + askSize) : 0.5f;
+            // Books are USD pairs; grouping and symbol placement follow the device locale
+            label = String.format(Locale.getDefault(), "%s  bid %s  %.2f BTC | %.2f BTC  ask %s",
+                    exchange, usd.format(book.getBidPrice(0) / 100.0), bidSize / (double) Quote.VOLUME_SCALE,
+                    askSize / (double) Quote.VOLUME_SCALE, usd.format(book.getAskPrice(0) / 100.0));
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        textPaint.setTextSize(h * 0.7f);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int width = getWidth();
+        int height = getHeight();
+        float split = width * bidFraction;
+        canvas.drawRect(0, 0, split, height, bidPaint);
+        canvas.drawRect(split, 0, width, height, askPaint);
+        float baseline = height / 2f - (textPaint.descent() + textPaint.ascent()) / 2f;
+        canvas.drawText(label, width / 2f, baseline, textPaint);
+    }
+}
@@ -2,6 +2,7 @@ package com.fiospace.bitcointicker;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
+import androidx.core.content.ContextCompat;
 import androidx.preference.PreferenceManager;
 
 import android.Manifest;
@@ -16,6 +17,7 @@ import android.os.Looper;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
 import android.view.WindowManager;
 import android.widget.Toast;
 
@@ -33,7 +35,9 @@ import retrofit2.Response;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
+import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
+import java.util.Currency;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -43,9 +47,11 @@ import java.util.concurrent.Executors;
 import com.fiospace.bitcoin_price_fetcher.BitcoinPriceFetcher;
 import com.fiospace.bitcointicker.NetworkUtils;
 
-public class MainActivity extends AppCompatActivity implements SharedPreferences.OnSharedPreferenceChangeListener {
+public class MainActivity extends AppCompatActivity implements SharedPreferences.OnSharedPreferenceChangeListener,
+        TickerRepository.Observer {
     private static final String TAG = "MainActivity";
     private static final String BASE_URL = "https://api.openweathermap.org/data/2.5/";
+    private static final int DEFAULT_BTC_COLOR = 0xFFF7931A;
     private FusedLocationProviderClient fusedLocationClient;
     private Toolbar toolbar;
     private String toolbarTitle;
@@ -54,6 +60,7 @@ public class MainActivity extends AppCompatActivity implements SharedPreferences
     private MaterialTextView textViewDate;
     private MaterialTextView textViewWeather;
     private MaterialTextView textViewBTC;
+    private DepthBarView depthBar;
 
     private Handler handler = new Handler(Looper.getMainLooper());
     private Runnable runnable;
@@ -61,16 +68,13 @@ public class MainActivity extends AppCompatActivity implements SharedPreferences
 
     private Handler weatherUpdateHandler;
     private Runnable weatherUpdateRunnable;
-    private Handler marketUpdateHandler;
-    private Runnable marketUpdateRunnable;
-    private int marketUpdateFrequency = 60000; // 60 seconds for testing, adjust as needed
     private int updateFrequency = 60000 * 60; // Default frequency in milliseconds (1 hour)
 
     private SharedPreferences sharedPreferences;
-    private ExecutorService executorService;
-
-    private String marketDataSource = "coinbase";
-    private List<String> availableMarketSources;
+    // Owns polling, peers, depth, alerts and history; outlives this activity
+    private TickerRepository tickerRepository;
+    // Wakeup and frame rates for comparison with TickerDreamService
+    private final PowerStats powerStats = new PowerStats("Full-screen activity");
 
     private String networkStatus;
     private boolean wasNetworkAvailable = false; // Track previous network state
@@ -87,8 +91,7 @@ public class MainActivity extends AppCompatActivity implements SharedPreferences
         sharedPreferences.registerOnSharedPreferenceChangeListener(this);
 
         String apiKey = sharedPreferences.getString("API_KEY", "");
-        marketDataSource = sharedPreferences.getString("MARKET_DATA_SOURCE", marketDataSource);
-        availableMarketSources = BitcoinPriceWrapper.getConfiguredMarketDataSources();
+        tickerRepository = TickerRepository.get(this);
 
         if (apiKey.isEmpty()) {
             // Handle empty API key
@@ -99,13 +102,13 @@ public class MainActivity extends AppCompatActivity implements SharedPreferences
         setSupportActionBar(toolbar);
 
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        getWindow().getDecorView().getViewTreeObserver().addOnDrawListener(powerStats::countFrame);
 
         textViewTime = findViewById(R.id.textViewTime);
         textViewDate = findViewById(R.id.textViewDate);
         textViewWeather = findViewById(R.id.textViewWeather);
         textViewBTC = findViewById(R.id.textViewBTC);
-
-        executorService = Executors.newSingleThreadExecutor();
+        depthBar = findViewById(R.id.depthBar);
 
         // Initialize network status
         checkNetworkAndInitialize();
@@ -113,13 +116,27 @@ public class MainActivity extends AppCompatActivity implements SharedPreferences
         runnable = new Runnable() {
             @Override
             public void run() {
+                powerStats.countWakeup();
                 updateTime();
                 handler.postDelayed(this, 1000);
             }
         };
         handler.post(runnable);
+    }
 
-        startMarketUpdates();
+    @Override
+    protected void onStart() {
+        super.onStart();
+        powerStats.start();
+        // Catches up from the last result if the engine is already running; no new fetch
+        tickerRepository.addObserver(this);
+    }
+
+    @Override
+    protected void onStop() {
+        tickerRepository.removeObserver(this);
+        powerStats.log();
+        super.onStop();
     }
 
     private void updateTime() {
@@ -135,82 +152,89 @@ public class MainActivity extends AppCompatActivity implements SharedPreferences
         showColon = true;
     }
 
-    private void startMarketUpdates() {
-        marketUpdateHandler = new Handler(Looper.getMainLooper());
-        marketUpdateRunnable = new Runnable() {
-            @Override
-            public void run() {
-                fetchMarketData();
-                marketUpdateHandler.postDelayed(this, marketUpdateFrequency);
+    @Override
+    public void onQuote(Quote quote, PriceAlertEngine.Rule alert, boolean replayed) {
+        if (!replayed) {
+            powerStats.countWakeup();
+        }
+        if (quote != null) {
+            List<String> currencies = tickerRepository.getDisplayCurrencies();
+            String headline = quote.hasPriceIn(currencies.get(0)) ? currencies.get(0) : CurrencyConverter.USD;
+            textViewBTC.setText(BitcoinPriceWrapper.formatPrice(quote.getPriceIn(headline), headline));
+            textViewBTC.setTextColor(alertColor(alert));
+            if (alert != null && !replayed) {
+                Toast.makeText(MainActivity.this, "BTC " + alert, Toast.LENGTH_LONG).show();
             }
-        };
-        marketUpdateHandler.post(marketUpdateRunnable);
+            textViewBTC.requestLayout();
+            textViewWeather.setText(quote.exchange); // Display the source that worked
+            toolbar.setSubtitle(formatTickerSummary(quote, currencies, headline));
+        } else {
+            textViewBTC.setText("N/A");
+            textViewWeather.setText("No data");
+            if (!replayed) {
+                Toast.makeText(MainActivity.this, "Failed to fetch Bitcoin price from all sources", Toast.LENGTH_SHORT).show();
+            }
+        }
     }
 
-    private void stopMarketUpdates() {
-        if (marketUpdateHandler != null && marketUpdateRunnable != null) {
-            marketUpdateHandler.removeCallbacks(marketUpdateRunnable);
+    @Override
+    public void onDepth(String exchange, OrderBook top) {
+        if (exchange == null) {
+            depthBar.setVisibility(View.GONE);
+            return;
         }
+        depthBar.setBook(exchange, top, TickerRepository.DEPTH_LEVELS);
+        depthBar.setVisibility(View.VISIBLE);
     }
 
-    private void fetchMarketData() {
-        executorService.execute(() -> {
-            String formattedPrice = null;
-            String successfulSource = null;
-            boolean priceFetched = false;
-
-            // Try the primary market data source first
-            try {
-                formattedPrice = BitcoinPriceWrapper.getPrice(marketDataSource);
-                successfulSource = marketDataSource;
-                priceFetched = true;
-                Log.i(TAG, marketDataSource + " BTC Price: " + formattedPrice);
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to fetch price from " + marketDataSource + ": " + e.getMessage());
-            }
-
-            // If primary source fails, try other available sources
-            if (!priceFetched) {
-                for (String source : availableMarketSources) {
-                    if (!source.equalsIgnoreCase(marketDataSource)) {
-                        try {
-                            formattedPrice = BitcoinPriceWrapper.getPrice(source);
-                            successfulSource = source;
-                            priceFetched = true;
-                            Log.i(TAG, source + " BTC Price: " + formattedPrice);
-                            break; // Exit loop on successful fetch
-                        } catch (Exception e) {
-                            Log.e(TAG, "Failed to fetch price from " + source + ": " + e.getMessage());
-                        }
-                    }
-                }
+    // The other display currencies, then extra ticker fields that came back in the same response,
+    // e.g. "GBP 52,940  24h +1.25%  spread $0.50  vol 8,412 BTC". An approximately-equals sign in
+    // front marks a price converted from USD rather than quoted by the exchange.
+    private static String formatTickerSummary(Quote quote, List<String> currencies, String headline) {
+        StringBuilder summary = new StringBuilder();
+        for (String currency : currencies) {
+            if (currency.equals(headline) || !quote.hasPriceIn(currency)) {
+                continue;
             }
+            if (summary.length() > 0) summary.append("  ");
+            if (quote.isPriceDerived(currency)) summary.append('\u2248');
+            summary.append(BitcoinPriceWrapper.formatPrice(quote.getPriceIn(currency), currency));
+        }
+        if (quote.has(Quote.OPEN)) {
+            if (summary.length() > 0) summary.append("  ");
+            long change = quote.getChangeBasisPoints();
+            summary.append(String.format(Locale.getDefault(), "24h %+.2f%%", change / 100.0));
+        }
+        if (quote.has(Quote.BID | Quote.ASK)) {
+            if (summary.length() > 0) summary.append("  ");
+            NumberFormat usd = NumberFormat.getCurrencyInstance(Locale.getDefault());
+            usd.setCurrency(Currency.getInstance(CurrencyConverter.USD));
+            summary.append("spread ").append(usd.format(quote.getSpreadCents() / 100.0));
+        }
+        if (quote.has(Quote.VOLUME)) {
+            if (summary.length() > 0) summary.append("  ");
+            summary.append(String.format(Locale.getDefault(), "vol %,d BTC", quote.getWholeVolume()));
+        }
+        return summary.length() > 0 ? summary.toString() : null;
+    }
 
-            // Create final copies for use in lambda
-            final String finalFormattedPrice = formattedPrice;
-            final String finalSuccessfulSource = successfulSource;
-            final boolean finalPriceFetched = priceFetched;
-
-            // Update UI on the main thread
-            runOnUiThread(() -> {
-                if (finalPriceFetched && finalFormattedPrice != null) {
-                    textViewBTC.setText(finalFormattedPrice);
-                    textViewBTC.requestLayout();
-                    textViewWeather.setText(finalSuccessfulSource); // Display the source that worked
-                } else {
-                    textViewBTC.setText("N/A");
-                    textViewWeather.setText("No data");
-                    Toast.makeText(MainActivity.this, "Failed to fetch Bitcoin price from all sources", Toast.LENGTH_SHORT).show();
-                }
-            });
-        });
+    private int alertColor(PriceAlertEngine.Rule alert) {
+        if (alert == null) {
+            return DEFAULT_BTC_COLOR;
+        }
+        switch (alert.type) {
+            case CROSS_ABOVE:
+                return ContextCompat.getColor(this, R.color.green);
+            case CROSS_BELOW:
+                return ContextCompat.getColor(this, R.color.red);
+            default:
+                return ContextCompat.getColor(this, R.color.magenta);
+        }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        stopMarketUpdates();
-        executorService.shutdown();
         handler.removeCallbacks(runnable);
         sharedPreferences.unregisterOnSharedPreferenceChangeListener(this);
     }
@@ -242,7 +266,6 @@ public class MainActivity extends AppCompatActivity implements SharedPreferences
 
         if (item.getItemId() == R.id.settings) {
             Log.d("MainActivity", "Settings menu item clicked");
-            SettingsActivity.setMarketDataSources(BitcoinPriceWrapper.getConfiguredMarketDataSources());
             Intent intent = new Intent(this, SettingsActivity.class);
             startActivity(intent);
             return true;
@@ -261,18 +284,8 @@ public class MainActivity extends AppCompatActivity implements SharedPreferences
         Log.i(TAG, "key: " + key);
         if (key.equals("API_KEY")) {
             Log.i(TAG, "Resetting API_KEY and startWeatherUpdates()");
-        } else if (key.equals("MARKET_DATA_SOURCE")) {
-            marketDataSource = sharedPreferences.getString(key, marketDataSource);
-            Log.i(TAG, "Market data source updated to: " + marketDataSource);
-            stopMarketUpdates();
-            startMarketUpdates();
         }
-    }
-
-    @Override
-    protected void onResume() {
-        super.onResume();
-        marketDataSource = sharedPreferences.getString("MARKET_DATA_SOURCE", marketDataSource);
+        // Engine settings (source, alerts, peers, depth, base URL) are handled by TickerRepository
     }
 
     private void checkNetworkAndInitialize() {
@@ -0,0 +1,52 @@
+package com.fiospace.bitcointicker;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Counts the main-thread wakeups a screen schedules (clock ticks, delivered quotes) and the frames
+ * its window draws, and logs them as per-hour rates when the screen goes away. Used to compare the
+ * full-screen activity with the ambient screensaver on a real device:
+ * {@code adb logcat -s PowerStats}.
+ */
+public class PowerStats {
+    private static final String TAG = "PowerStats";
+
+    private final String mode;
+    private long startedAt;
+    private int wakeups;
+    private int frames;
+
+    public PowerStats(String mode) {
+        this.mode = mode;
+    }
+
+    public void start() {
+        startedAt = SystemClock.elapsedRealtime();
+        wakeups = 0;
+        frames = 0;
+    }
+
+    public void countWakeup() {
+        wakeups++;
+    }
+
+    public void countFrame() {
+        frames++;
+    }
+
+    /**
+     * Logs the counts since {@link #start()} scaled to one hour.
+     */
+    public void log() {
+        long elapsed = SystemClock.elapsedRealtime() - startedAt;
+        if (startedAt == 0 || elapsed <= 0) {
+            return;
+        }
+        double hours = elapsed / 3_600_000.0;
+        Log.i(TAG, String.format(Locale.ROOT, "%s: %d wakeups, %d frames in %d s = %.0f wakeups/h, %.0f frames/h",
+                mode, wakeups, frames, elapsed / 1000, wakeups / hours, frames / hours));
+    }
+}
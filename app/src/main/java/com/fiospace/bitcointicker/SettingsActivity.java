@@ -9,41 +9,40 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.AdapterView;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class SettingsActivity extends AppCompatActivity {
 
     private Spinner marketDataSourceSpinner;
+    private EditText displayCurrenciesEditText;
+    private EditText priceAlertsEditText;
+    private EditText relayUrlEditText;
+    private CheckBox peerModeCheckBox;
+    private CheckBox depthModeCheckBox;
     private Button saveButton;
     private SharedPreferences sharedPreferences;
 
-    private static List<String> staticMarketDataSources;
-
-    // Static method to set market data sources before activity creation
-    public static void setMarketDataSources(List<String> marketDataSources) {
-        SettingsActivity.staticMarketDataSources = marketDataSources;
-    }
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_settings);
 
         marketDataSourceSpinner = findViewById(R.id.marketDataSourceSpinner);
+        displayCurrenciesEditText = findViewById(R.id.displayCurrenciesEditText);
+        priceAlertsEditText = findViewById(R.id.priceAlertsEditText);
+        relayUrlEditText = findViewById(R.id.relayUrlEditText);
+        peerModeCheckBox = findViewById(R.id.peerModeCheckBox);
+        depthModeCheckBox = findViewById(R.id.depthModeCheckBox);
         saveButton = findViewById(R.id.saveButton);
         sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
 
-        // Use the static list if it's set, otherwise initialize with default values
-        List<String> marketDataSources = staticMarketDataSources != null ? staticMarketDataSources : new ArrayList<>();
-        if (marketDataSources.isEmpty()) {
-            // Add some default sources if none are provided
-            marketDataSources.add("Coinbase");
-            marketDataSources.add("Coincap");
-        }
+        // Same list the running engine falls back through
+        List<String> marketDataSources = TickerRepository.get(this).getAvailableMarketSources();
 
         // Set up the spinner with options for market data sources
         setupSpinner(marketDataSources);
@@ -51,13 +50,29 @@ public class SettingsActivity extends AppCompatActivity {
         // Load the saved market data source if it exists
         String savedMarketDataSource = sharedPreferences.getString("MARKET_DATA_SOURCE", "");
         selectSpinnerItemByValue(marketDataSourceSpinner, savedMarketDataSource);
+        displayCurrenciesEditText.setText(sharedPreferences.getString("DISPLAY_CURRENCIES", ""));
+        priceAlertsEditText.setText(sharedPreferences.getString("PRICE_ALERTS", ""));
+        relayUrlEditText.setText(sharedPreferences.getString("RELAY_URL", ""));
+        peerModeCheckBox.setChecked(sharedPreferences.getBoolean("PEER_MODE", false));
+        depthModeCheckBox.setChecked(sharedPreferences.getBoolean("DEPTH_MODE", false));
 
         saveButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                String relayUrl = relayUrlEditText.getText().toString().trim();
+                if (!relayUrl.isEmpty() && !TickerRepository.isRelayUrlAllowed(relayUrl)) {
+                    // The relay would be unreachable and the ticker would silently fall back
+                    relayUrlEditText.setError("Use https://, or http:// to this device or the emulator host");
+                    return;
+                }
                 String marketDataSource = marketDataSourceSpinner.getSelectedItem().toString();
                 SharedPreferences.Editor editor = sharedPreferences.edit();
                 editor.putString("MARKET_DATA_SOURCE", marketDataSource);
+                editor.putString("DISPLAY_CURRENCIES", displayCurrenciesEditText.getText().toString().trim());
+                editor.putString("PRICE_ALERTS", priceAlertsEditText.getText().toString().trim());
+                editor.putString("RELAY_URL", relayUrl);
+                editor.putBoolean("PEER_MODE", peerModeCheckBox.isChecked());
+                editor.putBoolean("DEPTH_MODE", depthModeCheckBox.isChecked());
                 editor.apply();
                 finish(); // Close the activity after saving
             }
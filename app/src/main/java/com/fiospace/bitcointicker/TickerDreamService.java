@@ -0,0 +1,135 @@
+package com.fiospace.bitcointicker;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.service.dreams.DreamService;
+import android.view.View;
+import android.widget.TextView;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Screensaver variant of the ticker for TVs left on all day. It shows the same prices as
+ * {@link MainActivity} from the shared {@link TickerRepository}, but is built to wake the device as
+ * rarely as possible:
+ * <ul>
+ * <li>the clock is updated once per minute, on the minute, rather than every second;</li>
+ * <li>the repository polls at its ambient interval and stops depth streaming while only ambient
+ *     screens are attached;</li>
+ * <li>text views are only touched when their text changes, so only that view is redrawn;</li>
+ * <li>the content drifts a few pixels on every minute tick against burn-in, via translation, which
+ *     recomposites without redrawing any text.</li>
+ * </ul>
+ */
+public class TickerDreamService extends DreamService implements TickerRepository.Observer {
+    // Largest burn-in offset from the centre in either direction, and the step per minute, in dp
+    private static final int MAX_SHIFT_DP = 24;
+    private static final int SHIFT_STEP_DP = 4;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private final PowerStats powerStats = new PowerStats("Ambient screensaver");
+    private TickerRepository tickerRepository;
+    private View content;
+    private TextView priceView;
+    private TextView clockView;
+    private TextView sourceView;
+    private float maxShift;
+    private float shiftStep;
+
+    private final Runnable minuteRunnable = new Runnable() {
+        @Override
+        public void run() {
+            powerStats.countWakeup();
+            updateClock();
+            shiftContent();
+            handler.postDelayed(this, millisToNextMinute());
+        }
+    };
+
+    @Override
+    public void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        setInteractive(false);
+        setFullscreen(true);
+        setScreenBright(false);
+        setContentView(R.layout.dream_ticker);
+
+        content = findViewById(R.id.dreamContent);
+        priceView = findViewById(R.id.dreamPrice);
+        clockView = findViewById(R.id.dreamClock);
+        sourceView = findViewById(R.id.dreamSource);
+        float density = getResources().getDisplayMetrics().density;
+        maxShift = MAX_SHIFT_DP * density;
+        shiftStep = SHIFT_STEP_DP * density;
+        getWindow().getDecorView().getViewTreeObserver().addOnDrawListener(powerStats::countFrame);
+        tickerRepository = TickerRepository.get(this);
+    }
+
+    @Override
+    public void onDreamingStarted() {
+        super.onDreamingStarted();
+        powerStats.start();
+        updateClock();
+        handler.postDelayed(minuteRunnable, millisToNextMinute());
+        tickerRepository.addAmbientObserver(this);
+    }
+
+    @Override
+    public void onDreamingStopped() {
+        handler.removeCallbacks(minuteRunnable);
+        tickerRepository.removeObserver(this);
+        powerStats.log();
+        super.onDreamingStopped();
+    }
+
+    @Override
+    public void onQuote(Quote quote, PriceAlertEngine.Rule alert, boolean replayed) {
+        if (!replayed) {
+            powerStats.countWakeup();
+        }
+        if (quote == null) {
+            setTextIfChanged(sourceView, "No data");
+            return;
+        }
+        List<String> currencies = tickerRepository.getDisplayCurrencies();
+        String headline = quote.hasPriceIn(currencies.get(0)) ? currencies.get(0) : CurrencyConverter.USD;
+        setTextIfChanged(priceView, BitcoinPriceWrapper.formatPrice(quote.getPriceIn(headline), headline));
+        setTextIfChanged(sourceView, quote.exchange);
+    }
+
+    @Override
+    public void onDepth(String exchange, OrderBook top) {
+        // Not shown; the repository doesn't stream depth for ambient screens anyway
+    }
+
+    private void updateClock() {
+        setTextIfChanged(clockView, new SimpleDateFormat("h:mm a", Locale.getDefault()).format(new Date()));
+    }
+
+    // Random walk within the box; a change in translation only recomposites the existing layers
+    private void shiftContent() {
+        content.setTranslationX(step(content.getTranslationX()));
+        content.setTranslationY(step(content.getTranslationY()));
+    }
+
+    private float step(float offset) {
+        float next = offset + (random.nextInt(3) - 1) * shiftStep;
+        return Math.max(-maxShift, Math.min(maxShift, next));
+    }
+
+    // setText invalidates even when the text is the same, so skip identical updates
+    private static void setTextIfChanged(TextView view, String text) {
+        if (!text.contentEquals(view.getText())) {
+            view.setText(text);
+        }
+    }
+
+    private static long millisToNextMinute() {
+        return 60_000 - System.currentTimeMillis() % 60_000;
+    }
+}
@@ -0,0 +1,566 @@
+package com.fiospace.bitcointicker;
+
+import androidx.preference.PreferenceManager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.security.NetworkSecurityPolicy;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide owner of the price pipeline: polling, peer sharing, depth streaming, alerts and
+ * history. Screens observe it rather than own it, so when an activity is recreated (rotation,
+ * theme or TV configuration change) the new instance re-attaches to the running engine and is
+ * caught up from the last result, without new requests or new threads.
+ *
+ * The engine runs while at least one observer is attached, and for {@link #STOP_GRACE_MILLIS}
+ * after the last one leaves so the gap between an old activity stopping and its replacement
+ * starting doesn't restart it. All observer calls happen on the main thread.
+ *
+ * Ambient observers such as the screensaver only need a glanceable price: while every attached
+ * observer is ambient the engine polls every {@link #AMBIENT_UPDATE_FREQUENCY} milliseconds and
+ * doesn't stream depth.
+ */
+public class TickerRepository implements SharedPreferences.OnSharedPreferenceChangeListener {
+    private static final String TAG = "TickerRepository";
+    private static final String PRICE_HISTORY_FILE = "price_history.bin";
+    static final long STOP_GRACE_MILLIS = 5000;
+    public static final int DEPTH_LEVELS = 20;
+    static final int AMBIENT_UPDATE_FREQUENCY = 5 * 60000;
+    // Total time one poll may take across the primary source and its fallbacks
+    static final long ROUND_BUDGET_MILLIS = 15000;
+
+    public interface Observer {
+        /**
+         * @param quote    latest quote, or null if every source failed
+         * @param alert    price alert fired by this quote, if any
+         * @param replayed true when catching a newly attached observer up with an earlier result
+         */
+        void onQuote(Quote quote, PriceAlertEngine.Rule alert, boolean replayed);
+
+        /**
+         * @param exchange exchange being streamed, or null when depth mode is off
+         * @param top      best levels of the book; empty until the first snapshot is in
+         */
+        void onDepth(String exchange, OrderBook top);
+    }
+
+    private static TickerRepository instance;
+
+    public static synchronized TickerRepository get(Context context) {
+        if (instance == null) {
+            instance = new TickerRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private final Context context;
+    private final SharedPreferences sharedPreferences;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Lives as long as the process; fetches, alerts and history all run here in order
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    // Runs the individual fetches of a round so a stuck one can be cancelled without blocking executorService
+    private final ExecutorService fetchPool = Executors.newCachedThreadPool();
+    private final List<Observer> observers = new ArrayList<>();
+    private final List<Observer> ambientObservers = new ArrayList<>();
+
+    private int marketUpdateFrequency = 60000; // 60 seconds for testing, adjust as needed
+    private volatile String marketDataSource = "coinbase";
+    private final List<String> availableMarketSources;
+
+    // First entry is the headline currency; alerts and history always stay in USD
+    private volatile List<String> displayCurrencies;
+    private final CurrencyConverter currencyConverter = new CurrencyConverter();
+
+    private final PriceAlertEngine priceAlertEngine = new PriceAlertEngine();
+    private CompressedPriceHistory priceHistory = new CompressedPriceHistory();
+    // Reused for every poll; only touched on executorService
+    private final Quote quote = new Quote();
+    private PriceAlertEngine.Rule lastTriggeredAlert;
+    private volatile PeerQuoteSharing peerSharing;
+    private WifiManager.MulticastLock multicastLock;
+    private DepthStream depthStream;
+
+    // Main thread only: engine state and the latest results replayed to new observers
+    private boolean running;
+    private long lastFetchStarted;
+    private FetchRound lastRound;
+    // Relay URL last refused by isRelayUrlAllowed, so the refusal is logged once rather than every poll
+    private volatile String refusedRelayUrl;
+    private boolean hasResult;
+    private Quote lastQuote;
+    private PriceAlertEngine.Rule lastAlert;
+    private String depthExchange;
+    private OrderBook lastDepth;
+
+    private final Runnable marketUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // In peer mode only the elected leader polls; followers get its datagrams
+            if (peerSharing == null || peerSharing.isLeader()) {
+                fetchMarketData();
+            }
+            mainHandler.postDelayed(this, currentUpdateFrequency());
+        }
+    };
+    private final Runnable stopRunnable = this::stop;
+
+    private TickerRepository(Context context) {
+        this.context = context;
+        sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        // The preferences only hold listeners weakly; this singleton keeps itself reachable
+        sharedPreferences.registerOnSharedPreferenceChangeListener(this);
+
+        marketDataSource = sharedPreferences.getString("MARKET_DATA_SOURCE", marketDataSource);
+        availableMarketSources = Collections.unmodifiableList(BitcoinPriceWrapper.getConfiguredMarketDataSources());
+        // Debug hook: point every exchange at a StandInExchangeServer, e.g. http://10.0.2.2:8089
+        BitcoinPriceWrapper.setBaseUrlOverride(sharedPreferences.getString("BASE_URL_OVERRIDE", ""));
+        updateDisplayCurrencies(sharedPreferences.getString("DISPLAY_CURRENCIES", ""));
+        loadPriceAlerts(sharedPreferences.getString("PRICE_ALERTS", ""));
+        priceAlertEngine.setListener((rule, priceCents) -> {
+            Log.i(TAG, "Price alert triggered: " + rule);
+            lastTriggeredAlert = rule;
+        });
+        executorService.execute(this::loadPriceHistory);
+    }
+
+    public List<String> getAvailableMarketSources() {
+        return availableMarketSources;
+    }
+
+    public String getMarketDataSource() {
+        return marketDataSource;
+    }
+
+    /**
+     * Currencies to display, headline first; always at least one.
+     */
+    public List<String> getDisplayCurrencies() {
+        return displayCurrencies;
+    }
+
+    private void updateDisplayCurrencies(String spec) {
+        displayCurrencies = Collections.unmodifiableList(BitcoinPriceWrapper.parseCurrencyList(spec));
+        BitcoinPriceWrapper.setDisplayCurrencies(displayCurrencies);
+    }
+
+    /**
+     * Attaches an observer, catches it up with the latest results and starts the engine if needed.
+     * Call from the main thread, typically in {@code onStart}.
+     */
+    public void addObserver(Observer observer) {
+        addObserver(observer, false);
+    }
+
+    /**
+     * Like {@link #addObserver} for a screen that only needs an occasional price, such as a
+     * screensaver; polling slows down while no full screen is attached.
+     */
+    public void addAmbientObserver(Observer observer) {
+        addObserver(observer, true);
+    }
+
+    private void addObserver(Observer observer, boolean ambient) {
+        boolean wasAmbient = isAmbient();
+        observers.add(observer);
+        if (ambient) {
+            ambientObservers.add(observer);
+        }
+        mainHandler.removeCallbacks(stopRunnable);
+        if (hasResult) {
+            observer.onQuote(lastQuote, lastAlert, true);
+        }
+        if (running) {
+            observer.onDepth(depthExchange, lastDepth);
+            if (isAmbient() != wasAmbient) {
+                onAmbientChanged();
+            }
+        }
+        start();
+    }
+
+    /**
+     * Detaches an observer. The engine stops a few seconds after the last one leaves.
+     */
+    public void removeObserver(Observer observer) {
+        boolean wasAmbient = isAmbient();
+        observers.remove(observer);
+        ambientObservers.remove(observer);
+        if (observers.isEmpty() && running) {
+            executorService.execute(this::savePriceHistory);
+            mainHandler.postDelayed(stopRunnable, STOP_GRACE_MILLIS);
+        } else if (running && isAmbient() != wasAmbient) {
+            onAmbientChanged();
+        }
+    }
+
+    // True when observers are attached and all of them are ambient
+    private boolean isAmbient() {
+        return !observers.isEmpty() && ambientObservers.size() == observers.size();
+    }
+
+    private int currentUpdateFrequency() {
+        return isAmbient() ? AMBIENT_UPDATE_FREQUENCY : marketUpdateFrequency;
+    }
+
+    private void onAmbientChanged() {
+        Log.i(TAG, isAmbient() ? "Only ambient screens attached; polling every " + AMBIENT_UPDATE_FREQUENCY + " ms"
+                : "Full screen attached; polling every " + marketUpdateFrequency + " ms");
+        schedulePoll();
+        updateDepthMode();
+    }
+
+    // Schedules the next poll one interval after the last one started, or now if that has passed
+    private void schedulePoll() {
+        mainHandler.removeCallbacks(marketUpdateRunnable);
+        long sinceLastFetch = System.currentTimeMillis() - lastFetchStarted;
+        mainHandler.postDelayed(marketUpdateRunnable, Math.max(0, currentUpdateFrequency() - sinceLastFetch));
+    }
+
+    private void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Log.i(TAG, "Starting ticker engine");
+        if (sharedPreferences.getBoolean("PEER_MODE", false)) {
+            startPeerSharing();
+        }
+        updateDepthMode();
+        // Only poll straight away if the last result is due for a refresh
+        schedulePoll();
+    }
+
+    private void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Log.i(TAG, "Stopping ticker engine");
+        mainHandler.removeCallbacks(marketUpdateRunnable);
+        stopPeerSharing();
+        stopDepthStream();
+    }
+
+    private void restartMarketUpdates() {
+        mainHandler.removeCallbacks(marketUpdateRunnable);
+        mainHandler.post(marketUpdateRunnable);
+    }
+
+    private void fetchMarketData() {
+        // A round whose fetches haven't exited yet still holds sockets and threads; let it drain
+        if (lastRound != null && !lastRound.isReleased()) {
+            Log.i(TAG, "Skipping poll: previous round still has " + lastRound.getActiveCount() + " fetches running");
+            return;
+        }
+        lastFetchStarted = System.currentTimeMillis();
+        String primarySource = marketDataSource;
+        FetchRound round = new FetchRound(fetchPool, ROUND_BUDGET_MILLIS);
+        lastRound = round;
+        executorService.execute(() -> {
+            Quote fetched;
+            List<Quote> sourceQuotes = Collections.emptyList();
+            String relayUrl = usableRelayUrl(sharedPreferences.getString("RELAY_URL", ""));
+            if (!relayUrl.isEmpty()) {
+                // A configured relay is the only data source; no fallback to the exchanges
+                fetched = round.fetch("relay", () -> BitcoinPriceWrapper.fetchQuoteFromRelay(relayUrl, new Quote()));
+            } else {
+                // Primary source first, then the others, all within the round budget
+                List<String> sources = new ArrayList<>();
+                sources.add(primarySource);
+                for (String source : availableMarketSources) {
+                    if (!source.equalsIgnoreCase(primarySource)) {
+                        sources.add(source);
+                    }
+                }
+                if (priceAlertEngine.hasDivergenceRules()) {
+                    // Divergence compares sources, so ask all of them in parallel and show the
+                    // primary's answer when it came; fetchAll keeps source order
+                    sourceQuotes = round.fetchAll(sources);
+                    fetched = sourceQuotes.isEmpty() ? null : sourceQuotes.get(0);
+                } else {
+                    fetched = round.fetchFirst(sources);
+                }
+            }
+            round.finish();
+
+            boolean priceFetched = fetched != null;
+            if (priceFetched) {
+                quote.copyFrom(fetched);
+                Log.i(TAG, quote.exchange + " BTC Price: " + BitcoinPriceWrapper.formatPrice(quote.getLast()));
+            } else {
+                Log.e(TAG, "No source answered within " + ROUND_BUDGET_MILLIS + " ms");
+            }
+            if (priceFetched && peerSharing != null && relayUrl.isEmpty()) {
+                peerSharing.publish(quote);
+            }
+            showQuote(priceFetched, sourceQuotes);
+        });
+    }
+
+    // The configured relay URL, or "" to poll the exchanges when the network security config would
+    // block it: RelayServer only speaks HTTP, and release builds only allow cleartext to this
+    // device and the emulator's host
+    private String usableRelayUrl(String relayUrl) {
+        if (relayUrl.isEmpty() || isRelayUrlAllowed(relayUrl)) {
+            return relayUrl;
+        }
+        if (!relayUrl.equals(refusedRelayUrl)) {
+            refusedRelayUrl = relayUrl;
+            Log.e(TAG, "Cleartext to " + relayUrl + " is not permitted; polling the exchanges instead");
+        }
+        return "";
+    }
+
+    /**
+     * @return true for an https URL, or an http URL to a host this build allows cleartext to
+     */
+    public static boolean isRelayUrlAllowed(String relayUrl) {
+        URI uri;
+        try {
+            uri = URI.create(relayUrl.trim());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (uri.getHost() == null) {
+            return false;
+        }
+        if ("https".equalsIgnoreCase(uri.getScheme())) {
+            return true;
+        }
+        return "http".equalsIgnoreCase(uri.getScheme())
+                && NetworkSecurityPolicy.getInstance().isCleartextTrafficPermitted(uri.getHost());
+    }
+
+    // Runs on executorService with the latest result in quote, whether polled or received from a
+    // peer. sourceQuotes holds every source's answer when the round asked them all, else is empty.
+    private void showQuote(boolean priceFetched, List<Quote> sourceQuotes) {
+        // Evaluate price alerts on the executor thread; the listener records the last hit
+        lastTriggeredAlert = null;
+        Quote snapshot = null;
+        if (priceFetched) {
+            long now = System.currentTimeMillis();
+            if (sourceQuotes.isEmpty()) {
+                priceAlertEngine.onSourceQuote(quote.exchange, quote.lastCents, now);
+            }
+            for (Quote sourceQuote : sourceQuotes) {
+                priceAlertEngine.onSourceQuote(sourceQuote.exchange, sourceQuote.lastCents, now);
+            }
+            priceAlertEngine.onTick(quote.lastCents, now);
+            priceHistory.append(now, quote.lastCents);
+            // Pairs the source didn't quote come from USD times the cached FX table, which is
+            // refreshed on the fetch pool so a slow FX endpoint never holds up a poll
+            currencyConverter.fill(quote, displayCurrencies);
+            if (!BitcoinPriceWrapper.getExtraCurrencies().isEmpty()) {
+                fetchPool.execute(currencyConverter::refreshIfStale);
+            }
+            // Observers get their own copy; quote is reused by the next poll
+            snapshot = new Quote();
+            snapshot.copyFrom(quote);
+        }
+        final Quote result = snapshot;
+        final PriceAlertEngine.Rule alert = lastTriggeredAlert;
+        mainHandler.post(() -> {
+            hasResult = true;
+            lastQuote = result;
+            lastAlert = alert;
+            for (Observer observer : new ArrayList<>(observers)) {
+                observer.onQuote(result, alert, false);
+            }
+        });
+    }
+
+    // Runs on executorService, apart from the first load in the constructor
+    private void loadPriceAlerts(String spec) {
+        priceAlertEngine.clear();
+        for (String rejected : priceAlertEngine.addRulesFromSpec(spec)) {
+            Log.e(TAG, "Ignoring malformed price alert: " + rejected);
+        }
+        Log.i(TAG, "Loaded " + priceAlertEngine.getRuleCount() + " price alerts");
+    }
+
+    private void startPeerSharing() {
+        if (peerSharing != null) {
+            return;
+        }
+        // Android drops multicast frames on Wi-Fi unless a lock is held
+        WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        if (wifiManager != null) {
+            multicastLock = wifiManager.createMulticastLock(TAG);
+            multicastLock.setReferenceCounted(false);
+            multicastLock.acquire();
+        }
+        try {
+            peerSharing = new PeerQuoteSharing(new PeerQuoteSharing.Listener() {
+                @Override
+                public void onQuote(Quote received) {
+                    Quote snapshot = new Quote();
+                    snapshot.copyFrom(received);
+                    executorService.execute(() -> {
+                        quote.copyFrom(snapshot);
+                        showQuote(true, Collections.emptyList());
+                    });
+                }
+
+                @Override
+                public void onLeadershipChanged(boolean leader) {
+                    Log.i(TAG, leader ? "Peer mode: this display now polls for the LAN" : "Peer mode: following LAN leader");
+                    if (leader) {
+                        // Poll straight away rather than waiting out the interval
+                        mainHandler.post(TickerRepository.this::restartMarketUpdates);
+                    }
+                }
+            });
+            peerSharing.start();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start peer sharing: " + e.getMessage());
+            stopPeerSharing();
+        }
+    }
+
+    private void stopPeerSharing() {
+        if (peerSharing != null) {
+            peerSharing.stop();
+            peerSharing = null;
+        }
+        if (multicastLock != null) {
+            multicastLock.release();
+            multicastLock = null;
+        }
+    }
+
+    // Streams the order book of the selected source when depth mode is on, the source has a depth
+    // feed and a full screen is attached to show it
+    private void updateDepthMode() {
+        stopDepthStream();
+        DepthFeed feed = null;
+        if (sharedPreferences.getBoolean("DEPTH_MODE", false) && !isAmbient()) {
+            feed = DepthFeed.forExchange(marketDataSource);
+            if (feed == null) {
+                Log.i(TAG, "Depth mode: " + marketDataSource + " has no depth stream; supported: " + DepthFeed.getSupportedExchanges());
+            }
+        }
+        depthExchange = feed != null ? feed.getExchange() : null;
+        lastDepth = feed != null ? new OrderBook(1) : null;
+        notifyDepth();
+        if (feed == null) {
+            return;
+        }
+        depthStream = new DepthStream(feed, DEPTH_LEVELS, (exchange, top) -> mainHandler.post(() -> {
+            // Drop updates from a stream that was replaced while this one was in flight
+            if (depthStream == null || !depthStream.getFeed().getExchange().equals(exchange)) {
+                return;
+            }
+            lastDepth = top;
+            notifyDepth();
+        }));
+        depthStream.start();
+    }
+
+    private void stopDepthStream() {
+        if (depthStream != null) {
+            depthStream.stop();
+            depthStream = null;
+        }
+    }
+
+    private void notifyDepth() {
+        for (Observer observer : new ArrayList<>(observers)) {
+            observer.onDepth(depthExchange, lastDepth);
+        }
+    }
+
+    private File priceHistoryFile() {
+        return new File(context.getFilesDir(), PRICE_HISTORY_FILE);
+    }
+
+    // Runs on executorService
+    private void loadPriceHistory() {
+        File file = priceHistoryFile();
+        if (!file.exists()) {
+            return;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            priceHistory = CompressedPriceHistory.readFrom(in);
+            Log.i(TAG, "Loaded " + priceHistory.size() + " history points (" + priceHistory.sizeInBytes() + " bytes)");
+        } catch (IOException | RuntimeException e) {
+            // Start over rather than fail on the same file at every launch
+            Log.e(TAG, "Discarding unreadable price history: " + e);
+            if (!file.delete()) {
+                Log.e(TAG, "Failed to delete price history file");
+            }
+        }
+    }
+
+    // Runs on executorService
+    private void savePriceHistory() {
+        File tmp = new File(context.getFilesDir(), PRICE_HISTORY_FILE + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            priceHistory.writeTo(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save price history: " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(priceHistoryFile())) {
+            Log.e(TAG, "Failed to replace price history file");
+        }
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (key == null) {
+            return;
+        }
+        if (key.equals("BASE_URL_OVERRIDE")) {
+            BitcoinPriceWrapper.setBaseUrlOverride(sharedPreferences.getString(key, ""));
+            Log.i(TAG, "Base URL override set to: " + BitcoinPriceWrapper.getBaseUrlOverride());
+        } else if (key.equals("PEER_MODE")) {
+            if (!running) {
+                return; // Picked up on the next start
+            }
+            if (sharedPreferences.getBoolean(key, false)) {
+                startPeerSharing();
+            } else {
+                stopPeerSharing();
+            }
+        } else if (key.equals("DISPLAY_CURRENCIES")) {
+            updateDisplayCurrencies(sharedPreferences.getString(key, ""));
+            Log.i(TAG, "Display currencies set to: " + displayCurrencies);
+            if (running) {
+                restartMarketUpdates();
+            }
+        } else if (key.equals("PRICE_ALERTS")) {
+            String spec = sharedPreferences.getString(key, "");
+            executorService.execute(() -> loadPriceAlerts(spec));
+        } else if (key.equals("DEPTH_MODE")) {
+            if (running) {
+                updateDepthMode();
+            }
+        } else if (key.equals("MARKET_DATA_SOURCE")) {
+            marketDataSource = sharedPreferences.getString(key, marketDataSource);
+            Log.i(TAG, "Market data source updated to: " + marketDataSource);
+            if (running) {
+                restartMarketUpdates();
+                updateDepthMode();
+            }
+        }
+    }
+}
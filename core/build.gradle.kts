@@ -0,0 +1,42 @@
+// Fetch, parse, quote, cache and aggregation code with no Android dependencies. It builds, tests
+// and benchmarks on a plain JVM, runs the headless relay, and is what :app ships.
+plugins {
+    `java-library`
+    application
+    alias(libs.plugins.jmh)
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(17)
+    }
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    // Same language level as :app, and only JDK APIs the app's minSdk can run
+    options.release.set(10)
+}
+
+// android-json's checked JSONException and raw keys() iterator are easy to get wrong; keep the
+// module and its tests warning-free so they show up at once
+listOf("compileJava", "compileTestJava").forEach { name ->
+    tasks.named<JavaCompile>(name) {
+        options.compilerArgs.addAll(listOf("-Xlint:all", "-Werror"))
+    }
+}
+
+application {
+    // ./gradlew :core:run --args="--serve --port=8090"
+    mainClass.set("com.fiospace.bitcointicker.BitcoinPriceWrapper")
+}
+
+dependencies {
+    // Android's org.json implementation packaged for the JVM, so parsing behaves as on a device
+    implementation(libs.android.json)
+    implementation(libs.okhttp)
+    testImplementation(libs.junit)
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+}
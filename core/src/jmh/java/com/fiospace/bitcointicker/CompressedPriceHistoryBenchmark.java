@@ -0,0 +1,73 @@
+package com.fiospace.bitcointicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the history encoding on three months of per-minute BTC-like quotes: appending
+ * every point to an empty history, and decoding the whole history. Both report time per point.
+ *
+ * Run with {@code ./gradlew :core:jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressedPriceHistoryBenchmark {
+    private static final int MINUTES = 90 * 24 * 60;
+
+    private final long[] times = new long[MINUTES];
+    private final long[] prices = new long[MINUTES];
+    private final CompressedPriceHistory history = new CompressedPriceHistory();
+    private long checksum;
+
+    @Setup
+    public void setUp() {
+        // Per-minute random walk around $67k with poll jitter and occasional outages
+        Random random = new Random(3);
+        long time = 1_700_000_000_000L;
+        long price = 6_700_000L;
+        for (int i = 0; i < MINUTES; i++) {
+            time += 60_000 + random.nextInt(2_000) - 1_000;
+            if (random.nextInt(500) == 0) {
+                time += 60_000L * (1 + random.nextInt(30));
+            }
+            price += (long) (random.nextGaussian() * 3_000);
+            times[i] = time;
+            prices[i] = price;
+            history.append(time, price);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MINUTES)
+    public long append() {
+        CompressedPriceHistory fresh = new CompressedPriceHistory();
+        for (int i = 0; i < MINUTES; i++) {
+            fresh.append(times[i], prices[i]);
+        }
+        return fresh.sizeInBytes();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MINUTES)
+    public long decode() {
+        checksum = 0;
+        history.decodeRange(Long.MIN_VALUE, Long.MAX_VALUE, (time, price) -> checksum += price);
+        return checksum;
+    }
+}
@@ -0,0 +1,73 @@
+package com.fiospace.bitcointicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of a full {@link FetchRound} over every configured source against a local
+ * {@link StandInExchangeServer} with exponential latency and a share of stalled requests. The
+ * sampled round times show how close the tail stays to the budget.
+ *
+ * Run with {@code ./gradlew :core:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FetchRoundBenchmark {
+    private static final long BUDGET_MILLIS = 400;
+
+    @Param({"0.0", "0.1"})
+    public double stallRate;
+
+    private ExecutorService pool;
+    private StandInExchangeServer server;
+    private List<String> sources;
+
+    @Setup
+    public void setUp() throws Exception {
+        pool = Executors.newCachedThreadPool();
+        StandInExchangeServer.Config config = new StandInExchangeServer.Config();
+        config.port = 0;
+        config.stallRate = stallRate;
+        config.stallMillis = 60_000;
+        config.distribution = StandInExchangeServer.LatencyDistribution.EXPONENTIAL;
+        config.jitterMillis = 50;
+        server = new StandInExchangeServer(config, null);
+        server.start();
+        BitcoinPriceWrapper.setBaseUrlOverride("http://127.0.0.1:" + server.getPort());
+        sources = BitcoinPriceWrapper.getConfiguredMarketDataSources();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BitcoinPriceWrapper.setBaseUrlOverride(null);
+        server.stop();
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public int fetchAll() {
+        FetchRound round = new FetchRound(pool, BUDGET_MILLIS);
+        int quotes = round.fetchAll(sources).size();
+        round.finish();
+        return quotes;
+    }
+}
@@ -0,0 +1,108 @@
+package com.fiospace.bitcointicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of a synthetic Binance depth stream: {@code frame} runs each diff through
+ * {@link DepthFeed} (JSON decode, gap check and book update) as {@link DepthStream} does, and
+ * {@code update} applies the same levels pre-decoded, which is the {@link OrderBook} work alone.
+ *
+ * Run with {@code ./gradlew :core:jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+    private static final int FRAMES = 10_000;
+    private static final int LEVELS_PER_SIDE = 5;
+    private static final int UPDATES = FRAMES * LEVELS_PER_SIDE * 2;
+    private static final long MID = 6_700_000L;
+    private static final long FIRST_UPDATE_ID = 1_000;
+
+    private final String[] frames = new String[FRAMES];
+    private final boolean[] sides = new boolean[UPDATES];
+    private final long[] levelPrices = new long[UPDATES];
+    private final long[] levelSizes = new long[UPDATES];
+    private String snapshot;
+    private final DepthFeed.RestSnapshotFeed feed = (DepthFeed.RestSnapshotFeed) DepthFeed.forExchange("binance");
+    private final OrderBook book = new OrderBook(DepthFeed.DEFAULT_CAPACITY);
+
+    @Setup
+    public void setUp() {
+        StringBuilder json = new StringBuilder("{\"lastUpdateId\":").append(FIRST_UPDATE_ID).append(",\"bids\":[");
+        for (int i = 0; i < 100; i++) {
+            json.append(i > 0 ? "," : "").append("[\"").append(decimal(MID - 1 - i, 2)).append("\",\"1.00000000\"]");
+        }
+        json.append("],\"asks\":[");
+        for (int i = 0; i < 100; i++) {
+            json.append(i > 0 ? "," : "").append("[\"").append(decimal(MID + i, 2)).append("\",\"1.00000000\"]");
+        }
+        snapshot = json.append("]}").toString();
+
+        // Most diffs land within a few dollars of a fixed mid, so the book never crosses
+        Random random = new Random(11);
+        long updateId = FIRST_UPDATE_ID;
+        int n = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            StringBuilder frame = new StringBuilder(512).append("{\"e\":\"depthUpdate\",\"s\":\"BTCUSDT\",\"U\":")
+                    .append(updateId + 1).append(",\"u\":").append(updateId + 3).append(",\"b\":[");
+            for (int side = 0; side < 2; side++) {
+                if (side == 1) frame.append("],\"a\":[");
+                for (int l = 0; l < LEVELS_PER_SIDE; l++) {
+                    long offset = (long) Math.abs(random.nextGaussian() * 500);
+                    long price = side == 0 ? MID - 1 - offset : MID + offset;
+                    long size = random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(200_000_000);
+                    if (l > 0) frame.append(',');
+                    frame.append("[\"").append(decimal(price, 2)).append("\",\"").append(decimal(size, 8)).append("\"]");
+                    sides[n] = side == 0;
+                    levelPrices[n] = price;
+                    levelSizes[n++] = size;
+                }
+            }
+            frames[i] = frame.append("]}").toString();
+            updateId += 3;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long frame() {
+        feed.reset();
+        feed.onSnapshot(snapshot);
+        for (String frame : frames) {
+            feed.onMessage(frame);
+        }
+        return feed.getBook().getSequence();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPDATES)
+    public long update() {
+        book.clear();
+        for (int i = 0; i < UPDATES; i++) {
+            book.update(sides[i], levelPrices[i], levelSizes[i]);
+        }
+        return book.getUpdateCount();
+    }
+
+    private static String decimal(long units, int scale) {
+        return BigDecimal.valueOf(units, scale).toPlainString();
+    }
+}
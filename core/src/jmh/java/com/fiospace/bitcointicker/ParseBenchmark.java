@@ -0,0 +1,45 @@
+package com.fiospace.bitcointicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the per-poll parse path: one exchange response body into a reused
+ * {@link Quote}, as {@link BitcoinPriceWrapper#parseQuote} runs it for every poll and replay.
+ *
+ * Run with {@code ./gradlew :core:jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({"binance", "bitfinex", "bitstamp", "coinbase", "coingecko", "cryptocompare", "gemini", "kraken"})
+    public String exchange;
+
+    private String body;
+    private final Quote quote = new Quote();
+
+    @Setup
+    public void setUp() {
+        body = StandInExchangeServer.sampleBody(exchange, "67412.35");
+    }
+
+    @Benchmark
+    public long parse() throws Exception {
+        return BitcoinPriceWrapper.parseQuote(exchange, body, quote).lastCents;
+    }
+}
@@ -0,0 +1,59 @@
+package com.fiospace.bitcointicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of {@link PriceAlertEngine#onTick} with a large threshold rule set, fed a random
+ * walk that keeps crossing levels.
+ *
+ * Run with {@code ./gradlew :core:jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceAlertEngineBenchmark {
+    private static final int TICKS = 1 << 20;
+
+    @Param({"1000", "100000"})
+    public int rules;
+
+    private final PriceAlertEngine engine = new PriceAlertEngine();
+    private final long[] prices = new long[TICKS];
+    private int tick;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        for (int i = 0; i < rules; i++) {
+            long level = 4_000_000L + random.nextInt(6_000_000);
+            if ((i & 1) == 0) engine.addCrossAbove(level); else engine.addCrossBelow(level);
+        }
+        long price = 7_000_000L;
+        for (int i = 0; i < TICKS; i++) {
+            price += random.nextInt(5_001) - 2_500;
+            prices[i] = price;
+        }
+    }
+
+    @Benchmark
+    public int onTick() {
+        int i = tick++ & (TICKS - 1);
+        return engine.onTick(prices[i], tick);
+    }
+}
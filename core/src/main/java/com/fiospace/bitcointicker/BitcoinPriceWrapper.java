@@ -0,0 +1,691 @@
+package com.fiospace.bitcointicker;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class BitcoinPriceWrapper {
+
+    private static final String BINANCE_API_URL = "https://api.binance.com/api/v3/ticker/24hr?symbol=BTCUSDT";
+    // The 24hr tickers of several symbols in one response; used when other currencies are wanted too
+    private static final String BINANCE_SYMBOLS_URL = "https://api.binance.com/api/v3/ticker/24hr?symbols=";
+    private static final String BITFINEX_API_URL = "https://api-pub.bitfinex.com/v2/tickers?symbols=tBTCUSD";
+    private static final String BITSTAMP_API_URL = "https://www.bitstamp.net/api/v2/ticker/btcusd";
+    private static final String COINBASE_API_URL = "https://api.coinbase.com/v2/prices/spot?currency=USD";
+    private static final String COINGECKO_API_URL = "https://api.coingecko.com/api/v3/simple/price?ids=bitcoin&vs_currencies=usd";
+    private static final String CRYPTOCOMPARE_API_URL = "https://min-api.cryptocompare.com/data/price?fsym=BTC&tsyms=USD";
+    private static final String GEMINI_API_URL = "https://api.gemini.com/v1/pubticker/btcusd";
+    private static final String KRAKEN_API_URL = "https://api.kraken.com/0/public/Ticker?pair=XXBTZUSD";
+    // Binance and Kraken fail the whole batch on one unknown pair, so only fiat pairs they list are
+    // batched; CurrencyConverter derives the rest
+    private static final List<String> BINANCE_FIAT = Arrays.asList("EUR", "TRY", "BRL", "JPY", "PLN", "ZAR", "ARS");
+    private static final List<String> KRAKEN_FIAT = Arrays.asList("EUR", "GBP", "JPY", "CAD", "CHF", "AUD");
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int DEFAULT_READ_TIMEOUT_MILLIS = 15_000;
+
+    private static volatile String baseUrlOverride;
+    private static volatile ResponseRecording.Writer recorder;
+    // Display currencies besides USD, upper case; batched into one request where the exchange allows
+    private static volatile List<String> extraCurrencies = Collections.emptyList();
+
+    public static String getPrice(String exchange) throws Exception {
+        return formatPrice(fetchPrice(exchange));
+    }
+
+    /**
+     * Fetches the raw BTC price from the given exchange without any display formatting.
+     *
+     * @param exchange The exchange name as returned by {@link #getConfiguredMarketDataSources()}.
+     * @return The last traded price in USD.
+     */
+    public static BigDecimal fetchPrice(String exchange) throws Exception {
+        return fetchQuote(exchange, new Quote()).getLast();
+    }
+
+    /**
+     * Fetches every ticker field the exchange returns in one request and one parse pass.
+     *
+     * @param exchange The exchange name as returned by {@link #getConfiguredMarketDataSources()}.
+     * @param quote    Record to fill; it is reset first so callers can reuse one instance per poll.
+     * @return the same {@code quote}
+     */
+    public static Quote fetchQuote(String exchange, Quote quote) throws Exception {
+        if (exchange == null || exchange.trim().isEmpty()) {
+            throw new IllegalArgumentException("Exchange cannot be null or empty");
+        }
+
+        // Normalize exchange name to lowercase
+        String normalizedExchange = exchange.trim().toLowerCase();
+
+        // Construct the method name (e.g., "getPriceFromBinance")
+        String methodName = "getPriceFrom" + normalizedExchange.substring(0, 1).toUpperCase() + normalizedExchange.substring(1);
+
+        try {
+            // Get the method dynamically
+            Method method = BitcoinPriceWrapper.class.getDeclaredMethod(methodName, Quote.class);
+            quote.reset(normalizedExchange);
+            method.invoke(null, quote);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Unsupported exchange: " + normalizedExchange, e);
+        } catch (Exception e) {
+            // Handle invocation errors (e.g., InvocationTargetException, IllegalAccessException)
+            throw new Exception("Error fetching price from " + normalizedExchange + ": " + e.getCause().getMessage(), e);
+        }
+        if (!quote.has(Quote.LAST)) {
+            throw new Exception("No price in response from " + normalizedExchange);
+        }
+        quote.timestampMillis = System.currentTimeMillis();
+        return quote;
+    }
+
+    /**
+     * Aggregates prices from several sources into a single consensus value (the median), so one
+     * stale or outlying exchange can't move the displayed price.
+     */
+    public static BigDecimal consensusPrice(List<BigDecimal> prices) {
+        if (prices == null || prices.isEmpty()) {
+            throw new IllegalArgumentException("No prices to aggregate");
+        }
+        List<BigDecimal> sorted = new ArrayList<>(prices);
+        Collections.sort(sorted);
+        int middle = sorted.size() / 2;
+        if (sorted.size() % 2 == 1) {
+            return sorted.get(middle);
+        }
+        return sorted.get(middle - 1).add(sorted.get(middle)).divide(BigDecimal.valueOf(2));
+    }
+
+    /**
+     * Formats a USD price for the default locale with zero decimal places, e.g. "$67,412".
+     */
+    public static String formatPrice(BigDecimal price) {
+        return formatPrice(price, CurrencyConverter.USD);
+    }
+
+    /**
+     * Formats a price in the given ISO 4217 currency with zero decimal places, using the default
+     * locale's grouping and symbol placement (a German locale puts the euro sign after the number).
+     */
+    public static String formatPrice(BigDecimal price, String currency) {
+        NumberFormat formatter = NumberFormat.getCurrencyInstance(Locale.getDefault());
+        try {
+            formatter.setCurrency(Currency.getInstance(currency));
+        } catch (IllegalArgumentException e) {
+            // Not an ISO code; show the plain number with the code after it
+            formatter = NumberFormat.getNumberInstance(Locale.getDefault());
+            formatter.setMaximumFractionDigits(0);
+            return formatter.format(price.longValue()) + " " + currency;
+        }
+        formatter.setMinimumFractionDigits(0);
+        formatter.setMaximumFractionDigits(0);
+
+        return formatter.format(price.longValue());
+    }
+
+    /**
+     * Sets the currencies to show besides USD. Exchanges that can quote several pairs in one call
+     * (Binance, Bitfinex, CoinGecko, CryptoCompare, Kraken) return them alongside the USD ticker;
+     * for the rest {@link CurrencyConverter} derives them from USD.
+     */
+    public static void setDisplayCurrencies(List<String> currencies) {
+        List<String> extra = new ArrayList<>();
+        for (String currency : currencies) {
+            String code = currency.trim().toUpperCase(Locale.ROOT);
+            if (!code.isEmpty() && !code.equals(CurrencyConverter.USD) && !extra.contains(code)
+                    && extra.size() < Quote.MAX_CURRENCIES) {
+                extra.add(code);
+            }
+        }
+        extraCurrencies = Collections.unmodifiableList(extra);
+    }
+
+    public static List<String> getExtraCurrencies() {
+        return extraCurrencies;
+    }
+
+    /**
+     * Splits a preference value like "EUR, gbp ,JPY" into upper-case codes, defaulting to USD.
+     */
+    public static List<String> parseCurrencyList(String spec) {
+        List<String> currencies = new ArrayList<>();
+        if (spec != null) {
+            for (String part : spec.split("[,;\\s]+")) {
+                String code = part.trim().toUpperCase(Locale.ROOT);
+                if (!code.isEmpty() && !currencies.contains(code)) {
+                    currencies.add(code);
+                }
+            }
+        }
+        if (currencies.isEmpty()) {
+            currencies.add(CurrencyConverter.USD);
+        }
+        return currencies;
+    }
+
+    // symbols=["BTCUSDT","BTCEUR"], URL-encoded
+    static String binanceUrl(List<String> extra) {
+        StringBuilder symbols = new StringBuilder();
+        for (String currency : extra) {
+            if (BINANCE_FIAT.contains(currency)) {
+                symbols.append(",%22BTC").append(currency).append("%22");
+            }
+        }
+        if (symbols.length() == 0) {
+            return BINANCE_API_URL;
+        }
+        return BINANCE_SYMBOLS_URL + "%5B%22BTCUSDT%22" + symbols + "%5D";
+    }
+
+    static String bitfinexUrl(List<String> extra) {
+        StringBuilder url = new StringBuilder(BITFINEX_API_URL);
+        for (String currency : extra) {
+            url.append(",tBTC").append(currency);
+        }
+        return url.toString();
+    }
+
+    static String krakenUrl(List<String> extra) {
+        StringBuilder url = new StringBuilder(KRAKEN_API_URL);
+        for (String currency : extra) {
+            if (KRAKEN_FIAT.contains(currency)) {
+                url.append(",XBT").append(currency);
+            }
+        }
+        return url.toString();
+    }
+
+    static String coingeckoUrl(List<String> extra) {
+        StringBuilder url = new StringBuilder(COINGECKO_API_URL);
+        for (String currency : extra) {
+            url.append(',').append(currency.toLowerCase(Locale.ROOT));
+        }
+        return url.append("&include_24hr_change=true").toString();
+    }
+
+    static String cryptocompareUrl(List<String> extra) {
+        StringBuilder url = new StringBuilder(CRYPTOCOMPARE_API_URL);
+        for (String currency : extra) {
+            url.append(',').append(currency);
+        }
+        return url.toString();
+    }
+
+    private static void getPriceFromBinance(Quote quote) throws Exception {
+        parseBinance(readResponse("binance", binanceUrl(extraCurrencies)), quote);
+    }
+
+    private static void getPriceFromBitfinex(Quote quote) throws Exception {
+        parseBitfinex(readResponse("bitfinex", bitfinexUrl(extraCurrencies)), quote);
+    }
+
+    private static void getPriceFromBitstamp(Quote quote) throws Exception {
+        parseBitstamp(readResponse("bitstamp", BITSTAMP_API_URL), quote);
+    }
+
+    private static void getPriceFromCoinbase(Quote quote) throws Exception {
+        parseCoinbase(readResponse("coinbase", COINBASE_API_URL), quote);
+    }
+
+    private static void getPriceFromCoingecko(Quote quote) throws Exception {
+        parseCoingecko(readResponse("coingecko", coingeckoUrl(extraCurrencies)), quote);
+    }
+
+    private static void getPriceFromCryptocompare(Quote quote) throws Exception {
+        parseCryptocompare(readResponse("cryptocompare", cryptocompareUrl(extraCurrencies)), quote);
+    }
+
+    private static void getPriceFromGemini(Quote quote) throws Exception {
+        parseGemini(readResponse("gemini", GEMINI_API_URL), quote);
+    }
+
+    private static void getPriceFromKraken(Quote quote) throws Exception {
+        parseKraken(readResponse("kraken", krakenUrl(extraCurrencies)), quote);
+    }
+
+    // 24hr ticker costs the same single request as ticker/price but carries the full ticker.
+    // Older recordings of ticker/price only have "price". An array holds one 24hr ticker per
+    // symbol, fetched when other currencies are wanted; older recordings have the unfiltered
+    // ticker/price list instead.
+    static void parseBinance(String body, Quote quote) throws JSONException {
+        if (body.trim().startsWith("[")) {
+            parseBinanceSymbols(new JSONArray(body), quote);
+            return;
+        }
+        parseBinanceTicker(new JSONObject(body), quote);
+    }
+
+    private static void parseBinanceTicker(JSONObject json, Quote quote) throws JSONException {
+        quote.setLast(json.has("lastPrice") ? json.getString("lastPrice") : json.getString("price"));
+        quote.setBid(json.optString("bidPrice", null));
+        quote.setAsk(json.optString("askPrice", null));
+        quote.setHigh(json.optString("highPrice", null));
+        quote.setLow(json.optString("lowPrice", null));
+        quote.setOpen(json.optString("openPrice", null));
+        quote.setVolume(json.optString("volume", null));
+        quote.setVwap(json.optString("weightedAvgPrice", null));
+    }
+
+    // [{"symbol":"BTCUSDT","lastPrice":"67000.01",...}, ...]; USDT stands in for USD as elsewhere
+    private static void parseBinanceSymbols(JSONArray tickers, Quote quote) throws JSONException {
+        List<String> extra = extraCurrencies;
+        for (int i = 0; i < tickers.length(); i++) {
+            JSONObject entry = tickers.getJSONObject(i);
+            String symbol = entry.getString("symbol");
+            if (!symbol.startsWith("BTC")) {
+                continue;
+            }
+            String currency = symbol.substring(3);
+            if (currency.equals("USDT")) {
+                parseBinanceTicker(entry, quote);
+            } else if (extra.contains(currency)) {
+                quote.setPriceIn(currency, entry.has("lastPrice") ? entry.getString("lastPrice") : entry.getString("price"));
+            }
+        }
+    }
+
+    // One row per symbol: [SYMBOL, BID, BID_SIZE, ASK, ASK_SIZE, DAILY_CHANGE, DAILY_CHANGE_RELATIVE,
+    // LAST_PRICE, VOLUME, HIGH, LOW]. tBTCUSD fills the ticker, other tBTCxxx rows the last price in xxx.
+    static void parseBitfinex(String body, Quote quote) throws JSONException {
+        JSONArray json = new JSONArray(body);
+        for (int i = 0; i < json.length(); i++) {
+            JSONArray row = json.getJSONArray(i);
+            String symbol = row.getString(0);
+            if (symbol.equals("tBTCUSD")) {
+                parseBitfinexTicker(row, quote);
+            } else if (symbol.startsWith("tBTC") && symbol.length() == 7) {
+                quote.setPriceIn(symbol.substring(4), row.getString(7));
+            }
+        }
+    }
+
+    private static void parseBitfinexTicker(JSONArray ticker, Quote quote) throws JSONException {
+        quote.setLast(ticker.getString(7));
+        if (ticker.length() >= 11) {
+            quote.setBid(ticker.getString(1));
+            quote.setAsk(ticker.getString(3));
+            quote.setVolume(ticker.getString(8));
+            quote.setHigh(ticker.getString(9));
+            quote.setLow(ticker.getString(10));
+            quote.setOpenCents(quote.lastCents - Quote.parseFixed(ticker.getString(5), 2));
+        }
+    }
+
+    static void parseBitstamp(String body, Quote quote) throws JSONException {
+        JSONObject json = new JSONObject(body);
+        quote.setLast(json.getString("last"));
+        quote.setBid(json.optString("bid", null));
+        quote.setAsk(json.optString("ask", null));
+        quote.setHigh(json.optString("high", null));
+        quote.setLow(json.optString("low", null));
+        quote.setOpen(json.optString("open", null));
+        quote.setVolume(json.optString("volume", null));
+        quote.setVwap(json.optString("vwap", null));
+    }
+
+    // Spot price only; Coinbase has no ticker fields on this endpoint
+    static void parseCoinbase(String body, Quote quote) throws JSONException {
+        JSONObject json = new JSONObject(body);
+        JSONObject data = json.getJSONObject("data");
+        quote.setLast(data.getString("amount"));
+    }
+
+    static void parseCoingecko(String body, Quote quote) throws JSONException {
+        JSONObject json = new JSONObject(body);
+        JSONObject bitcoin = json.getJSONObject("bitcoin");
+        quote.setLast(bitcoin.getString("usd"));
+        // Other vs_currencies come back as lower-case keys next to "usd"
+        JSONArray keys = bitcoin.names();
+        for (int i = 0; i < keys.length(); i++) {
+            String key = keys.getString(i);
+            if (!key.equals("usd") && key.indexOf('_') < 0) {
+                quote.setPriceIn(key.toUpperCase(Locale.ROOT), bitcoin.getString(key));
+            }
+        }
+        // Present when the request asks for include_24hr_change; derive the open from it
+        if (bitcoin.has("usd_24h_change")) {
+            double change = bitcoin.getDouble("usd_24h_change");
+            quote.setOpenCents(Math.round(quote.lastCents / (1 + change / 100)));
+        }
+    }
+
+    // Price only, one key per requested tsym
+    static void parseCryptocompare(String body, Quote quote) throws JSONException {
+        JSONObject json = new JSONObject(body);
+        quote.setLast(json.getString("USD"));
+        JSONArray currencies = json.names();
+        for (int i = 0; i < currencies.length(); i++) {
+            String currency = currencies.getString(i);
+            if (!currency.equals("USD")) {
+                quote.setPriceIn(currency, json.getString(currency));
+            }
+        }
+    }
+
+    static void parseGemini(String body, Quote quote) throws JSONException {
+        JSONObject json = new JSONObject(body);
+        quote.setLast(json.getString("last"));
+        quote.setBid(json.optString("bid", null));
+        quote.setAsk(json.optString("ask", null));
+        JSONObject volume = json.optJSONObject("volume");
+        if (volume != null) {
+            quote.setVolume(volume.optString("BTC", null));
+        }
+    }
+
+    // Kraken arrays: a/b = [price, whole lot volume, lot volume], c = [price, lot volume],
+    // v/p/l/h = [today, last 24 hours], o = today's open
+    static void parseKraken(String body, Quote quote) throws JSONException {
+        JSONObject json = new JSONObject(body);
+        JSONObject result = json.getJSONObject("result");
+        // One entry per pair, keyed by Kraken's pair name (XXBTZUSD, XXBTZEUR, XBTCHF), which
+        // always ends in the quote currency; names() is null for an empty object
+        JSONArray pairs = result.names();
+        if (pairs == null) {
+            throw new JSONException("No ticker in Kraken result");
+        }
+        String pair = pairs.getString(0);
+        for (int i = 0; i < pairs.length(); i++) {
+            String name = pairs.getString(i);
+            String currency = name.substring(Math.max(0, name.length() - 3));
+            if (currency.equals(CurrencyConverter.USD)) {
+                pair = name;
+            } else if (KRAKEN_FIAT.contains(currency)) {
+                quote.setPriceIn(currency, result.getJSONObject(name).getJSONArray("c").getString(0));
+            }
+        }
+        JSONObject ticker = result.getJSONObject(pair);
+        quote.setLast(ticker.getJSONArray("c").getString(0));
+        JSONArray ask = ticker.optJSONArray("a");
+        JSONArray bid = ticker.optJSONArray("b");
+        JSONArray volume = ticker.optJSONArray("v");
+        JSONArray vwap = ticker.optJSONArray("p");
+        JSONArray low = ticker.optJSONArray("l");
+        JSONArray high = ticker.optJSONArray("h");
+        if (ask != null) quote.setAsk(ask.getString(0));
+        if (bid != null) quote.setBid(bid.getString(0));
+        if (volume != null) quote.setVolume(volume.getString(1));
+        if (vwap != null) quote.setVwap(vwap.getString(1));
+        if (low != null) quote.setLow(low.getString(1));
+        if (high != null) quote.setHigh(high.getString(1));
+        quote.setOpen(ticker.optString("o", null));
+    }
+
+    /**
+     * Parses a raw response body previously captured from the given exchange. Used by the replay
+     * harness to drive the parse path without any network I/O.
+     */
+    public static Quote parseQuote(String exchange, String body, Quote quote) throws Exception {
+        String normalizedExchange = exchange.trim().toLowerCase();
+        String methodName = "parse" + normalizedExchange.substring(0, 1).toUpperCase() + normalizedExchange.substring(1);
+        try {
+            Method method = BitcoinPriceWrapper.class.getDeclaredMethod(methodName, String.class, Quote.class);
+            quote.reset(normalizedExchange);
+            method.invoke(null, body, quote);
+            return quote;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Unsupported exchange: " + normalizedExchange, e);
+        }
+    }
+
+    public static BigDecimal parsePrice(String exchange, String body) throws Exception {
+        return parseQuote(exchange, body, new Quote()).getLast();
+    }
+
+    /**
+     * Reads the latest consensus quote from a {@link RelayServer} instead of the exchanges.
+     *
+     * @param relayUrl Base URL of the relay, e.g. {@code http://192.168.1.20:8090}
+     */
+    public static Quote fetchQuoteFromRelay(String relayUrl, Quote quote) throws Exception {
+        String base = relayUrl.trim().endsWith("/") ? relayUrl.trim().substring(0, relayUrl.trim().length() - 1) : relayUrl.trim();
+        String body = readResponse("relay", base + "/quote");
+        quote.reset("relay");
+        parseRelay(body, quote);
+        if (!quote.has(Quote.LAST)) {
+            throw new Exception("No price in response from relay");
+        }
+        return quote;
+    }
+
+    static void parseRelay(String body, Quote quote) throws JSONException {
+        JSONObject json = new JSONObject(body);
+        quote.exchange = "relay:" + json.optString("exchange", "consensus");
+        quote.timestampMillis = json.optLong("timestamp", System.currentTimeMillis());
+        quote.setLast(json.getString("last"));
+        quote.setBid(json.optString("bid", null));
+        quote.setAsk(json.optString("ask", null));
+        quote.setHigh(json.optString("high", null));
+        quote.setLow(json.optString("low", null));
+        quote.setOpen(json.optString("open", null));
+        quote.setVwap(json.optString("vwap", null));
+        quote.setVolume(json.optString("volume", null));
+    }
+
+    /**
+     * Points every source at a stand-in server instead of the live exchange. With an override of
+     * {@code http://127.0.0.1:8089} the Binance URL becomes
+     * {@code http://127.0.0.1:8089/binance/api/v3/ticker/24hr?symbol=BTCUSDT}. Pass null to restore
+     * the live endpoints.
+     */
+    public static void setBaseUrlOverride(String baseUrl) {
+        if (baseUrl == null || baseUrl.trim().isEmpty()) {
+            baseUrlOverride = null;
+        } else {
+            String trimmed = baseUrl.trim();
+            baseUrlOverride = trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+        }
+    }
+
+    public static String getBaseUrlOverride() {
+        return baseUrlOverride;
+    }
+
+    /**
+     * Captures the raw body of every successful response into the given recording, or stops
+     * recording when null.
+     */
+    public static void setRecorder(ResponseRecording.Writer writer) {
+        recorder = writer;
+    }
+
+    static ResponseRecording.Writer getRecorder() {
+        return recorder;
+    }
+
+    static String resolveUrl(String exchange, String liveUrl) {
+        String override = baseUrlOverride;
+        if (override == null || exchange.equals("relay")) {
+            return liveUrl;
+        }
+        // Keep the path and query of the live URL so the stand-in can tell endpoints apart
+        int pathStart = liveUrl.indexOf('/', liveUrl.indexOf("://") + 3);
+        return override + "/" + exchange + (pathStart >= 0 ? liveUrl.substring(pathStart) : "/");
+    }
+
+    // Inside a FetchRound the timeouts come from the attempt's slice of the round budget; these
+    // bound one-off fetches such as FX rates and depth snapshots
+    static String readResponse(String exchange, String liveUrl) throws Exception {
+        return readResponse(exchange, exchange, liveUrl);
+    }
+
+    // recordingKey differs from exchange for responses that are replayed apart from its quotes,
+    // such as depth snapshots
+    static String readResponse(String exchange, String recordingKey, String liveUrl) throws Exception {
+        String resolvedUrl = resolveUrl(exchange, liveUrl);
+        logURL(resolvedUrl);
+        URL url = new URL(resolvedUrl);
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        con.setRequestMethod("GET");
+        FetchRound.Attempt attempt = FetchRound.current();
+        if (attempt != null) {
+            attempt.register(con);
+        } else {
+            con.setConnectTimeout(DEFAULT_CONNECT_TIMEOUT_MILLIS);
+            con.setReadTimeout(DEFAULT_READ_TIMEOUT_MILLIS);
+        }
+
+        ResponseRecording.Writer writer = recorder;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8))) {
+            String inputLine;
+            StringBuilder response = new StringBuilder();
+
+            while ((inputLine = in.readLine()) != null) {
+                response.append(inputLine);
+            }
+
+            String body = response.toString();
+            if (writer != null) {
+                writer.record(recordingKey, System.currentTimeMillis(), con.getResponseCode(), body);
+            }
+            return body;
+        } catch (IOException e) {
+            // Failures are recorded too, so a replay reproduces the 5xx, 429s and timeouts
+            if (writer != null) {
+                writer.record(recordingKey, System.currentTimeMillis(), failedStatus(con), "");
+            }
+            throw e;
+        } finally {
+            if (attempt != null) {
+                attempt.unregister(con);
+            }
+            con.disconnect();
+        }
+    }
+
+    // HTTP status of a failed request, or NO_RESPONSE when it timed out or never connected
+    private static int failedStatus(HttpURLConnection con) {
+        try {
+            int status = con.getResponseCode();
+            return status > 0 ? status : ResponseRecording.NO_RESPONSE;
+        } catch (IOException e) {
+            return ResponseRecording.NO_RESPONSE;
+        }
+    }
+
+    // Helper method to log the URL that is being called
+    private static void logURL(String url) {
+        System.out.println("Calling API URL: " + url);
+    }
+
+    /**
+     * Returns a list of supported market data sources by inspecting the available getPriceFrom* methods.
+     *
+     * @return A List of strings representing the names of the market data sources.
+     */
+    public static List<String> getConfiguredMarketDataSources() {
+        List<String> sources = new ArrayList<>();
+        try {
+            // Get all declared methods in BitcoinPriceWrapper
+            Method[] methods = BitcoinPriceWrapper.class.getDeclaredMethods();
+            for (Method method : methods) {
+                // Look for methods starting with "getPriceFrom"
+                if (method.getName().startsWith("getPriceFrom")) {
+                    // Extract the exchange name (remove "getPriceFrom" prefix)
+                    String exchange = method.getName().substring("getPriceFrom".length());
+                    // Convert to lowercase to match getPrice switch cases
+                    sources.add(exchange.toLowerCase());
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error inspecting BitcoinPriceWrapper methods: " + e.getMessage());
+            e.printStackTrace();
+        }
+        // Return sorted list
+        return sources.stream().sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * Fetches every configured source and prints its price.
+     *
+     * Options: {@code --base-url=<url>} to target a stand-in server, {@code --record=<file>} to
+     * capture raw responses, {@code --rounds=<n>} to repeat the loop (default 1),
+     * {@code --currencies=EUR,GBP} to also print other currencies, quoted or converted.
+     * {@code --serve} instead runs the long-lived {@link RelayServer}; any remaining options are
+     * passed through to it.
+     */
+    public static void main(String[] args) {
+        if (Arrays.asList(args).contains("--serve")) {
+            try {
+                RelayServer.main(args);
+            } catch (Exception e) {
+                System.err.println("Relay failed to start: " + e.getMessage());
+                e.printStackTrace();
+            }
+            return;
+        }
+        int rounds = 1;
+        List<String> currencies = Collections.singletonList(CurrencyConverter.USD);
+        ResponseRecording.Writer writer = null;
+        try {
+            setBaseUrlOverride(System.getProperty("bitcointicker.baseUrl", System.getenv("BTC_BASE_URL")));
+            for (String arg : args) {
+                if (arg.startsWith("--base-url=")) {
+                    setBaseUrlOverride(arg.substring("--base-url=".length()));
+                } else if (arg.startsWith("--record=")) {
+                    writer = new ResponseRecording.Writer(new File(arg.substring("--record=".length())));
+                    setRecorder(writer);
+                } else if (arg.startsWith("--rounds=")) {
+                    rounds = Integer.parseInt(arg.substring("--rounds=".length()));
+                } else if (arg.startsWith("--currencies=")) {
+                    currencies = parseCurrencyList(arg.substring("--currencies=".length()));
+                    setDisplayCurrencies(currencies);
+                }
+            }
+
+            List<String> exchanges = getConfiguredMarketDataSources();
+            CurrencyConverter converter = new CurrencyConverter();
+            if (!extraCurrencies.isEmpty()) {
+                converter.refreshIfStale();
+            }
+            Quote quote = new Quote();
+
+            for (int round = 0; round < rounds; round++) {
+                for (String exchange : exchanges) {
+                    try {
+                        fetchQuote(exchange, quote);
+                        converter.fill(quote, currencies);
+                        StringBuilder line = new StringBuilder(exchange).append(" Price: ").append(formatPrice(quote.getLast()));
+                        for (String currency : currencies) {
+                            if (!currency.equals(CurrencyConverter.USD) && quote.hasPriceIn(currency)) {
+                                line.append("  ").append(quote.isPriceDerived(currency) ? "~" : "")
+                                        .append(formatPrice(quote.getPriceIn(currency), currency));
+                            }
+                        }
+                        System.out.println(line);
+                    } catch (Exception e) {
+                        System.err.println(e.getMessage());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("An error occurred: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            setRecorder(null);
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close recording: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
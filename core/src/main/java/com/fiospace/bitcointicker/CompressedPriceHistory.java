@@ -0,0 +1,497 @@
+package com.fiospace.bitcointicker;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Block-compressed price history in the style of Facebook's Gorilla time-series encoding.
+ *
+ * Each block holds up to {@code blockSize} points. Timestamps are stored at one second resolution
+ * as delta-of-delta with variable length buckets, which costs a single bit for a steady poll
+ * interval. Prices are fixed-point cents XOR-ed against the previous value, storing only the
+ * meaningful bits. Every sealed block keeps its time range and min/max/first/last price in an
+ * uncompressed index, so range queries only decode the blocks that overlap, and coarse views can
+ * be drawn from the index alone.
+ *
+ * Not thread-safe; confine to the fetch executor.
+ */
+public class CompressedPriceHistory {
+    private static final int MAGIC = 0x42544348; // "BTCH"
+    private static final int VERSION = 1;
+    public static final int DEFAULT_BLOCK_SIZE = 120;
+    // Limits for reading a file back; a point never takes more than 128 bits (the first one, raw)
+    // and every later point takes at least 2 bits (unchanged delta and unchanged price)
+    private static final int MAX_BLOCK_SIZE = 1 << 16;
+    private static final int MAX_BYTES_PER_POINT = 16;
+    private static final int FIRST_POINT_BYTES = 16;
+
+    public interface PointConsumer {
+        void accept(long timeMillis, long priceCents);
+    }
+
+    /**
+     * A sealed, immutable block plus the summary needed to skip it without decoding.
+     */
+    public static final class Block {
+        public final long startMillis;
+        public final long endMillis;
+        public final int count;
+        public final long firstCents;
+        public final long lastCents;
+        public final long minCents;
+        public final long maxCents;
+        final byte[] data;
+
+        Block(long startMillis, long endMillis, int count, long firstCents, long lastCents,
+              long minCents, long maxCents, byte[] data) {
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.count = count;
+            this.firstCents = firstCents;
+            this.lastCents = lastCents;
+            this.minCents = minCents;
+            this.maxCents = maxCents;
+            this.data = data;
+        }
+
+        public int sizeInBytes() {
+            return data.length;
+        }
+
+        public void decode(PointConsumer consumer) {
+            BlockDecoder decoder = new BlockDecoder(data, count);
+            while (decoder.next()) {
+                consumer.accept(decoder.timeMillis(), decoder.priceCents());
+            }
+        }
+    }
+
+    private final int blockSize;
+    private final List<Block> blocks = new ArrayList<>();
+    private BlockEncoder open;
+
+    public CompressedPriceHistory() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    public CompressedPriceHistory(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Appends a point. Times must be non-decreasing at one second resolution; out-of-order points
+     * are dropped.
+     */
+    public void append(long timeMillis, long priceCents) {
+        long seconds = timeMillis / 1000;
+        if (open != null && !open.canAppend(seconds)) {
+            seal();
+        }
+        if (open == null) {
+            Block last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+            if (last != null && seconds < last.endMillis / 1000) {
+                return;
+            }
+            open = new BlockEncoder(blockSize);
+        }
+        if (open.count > 0 && seconds < open.lastSeconds) {
+            return;
+        }
+        open.append(seconds, priceCents);
+        if (open.count >= blockSize) {
+            seal();
+        }
+    }
+
+    private void seal() {
+        if (open != null && open.count > 0) {
+            blocks.add(open.toBlock());
+        }
+        open = null;
+    }
+
+    public int size() {
+        int total = open != null ? open.count : 0;
+        for (Block block : blocks) {
+            total += block.count;
+        }
+        return total;
+    }
+
+    /**
+     * All blocks, including a snapshot of the block still being filled.
+     */
+    public List<Block> getBlocks() {
+        List<Block> all = new ArrayList<>(blocks);
+        if (open != null && open.count > 0) {
+            all.add(open.toBlock());
+        }
+        return all;
+    }
+
+    public long sizeInBytes() {
+        long total = 0;
+        for (Block block : getBlocks()) {
+            total += block.data.length;
+        }
+        return total;
+    }
+
+    /**
+     * Decodes only the blocks overlapping [fromMillis, toMillis] and emits the points inside it.
+     *
+     * @return number of blocks decoded
+     */
+    public int decodeRange(long fromMillis, long toMillis, PointConsumer consumer) {
+        List<Block> all = getBlocks();
+        // First block whose end is at or after fromMillis
+        int lo = 0, hi = all.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (all.get(mid).endMillis < fromMillis) lo = mid + 1; else hi = mid;
+        }
+        int decoded = 0;
+        for (int i = lo; i < all.size() && all.get(i).startMillis <= toMillis; i++) {
+            Block block = all.get(i);
+            BlockDecoder decoder = new BlockDecoder(block.data, block.count);
+            while (decoder.next()) {
+                long time = decoder.timeMillis();
+                if (time > toMillis) {
+                    break;
+                }
+                if (time >= fromMillis) {
+                    consumer.accept(time, decoder.priceCents());
+                }
+            }
+            decoded++;
+        }
+        return decoded;
+    }
+
+    /**
+     * Aggregates [fromMillis, toMillis) into OHLC candles of {@code intervalMillis}. Empty
+     * intervals are left as zero.
+     *
+     * @return array of {@code {open[], high[], low[], close[]}} indexed by interval
+     */
+    public long[][] candles(long fromMillis, long toMillis, long intervalMillis) {
+        int buckets = (int) Math.max(0, (toMillis - fromMillis + intervalMillis - 1) / intervalMillis);
+        long[] open = new long[buckets];
+        long[] high = new long[buckets];
+        long[] low = new long[buckets];
+        long[] close = new long[buckets];
+        Arrays.fill(low, Long.MAX_VALUE);
+        decodeRange(fromMillis, toMillis - 1, (time, price) -> {
+            int b = (int) ((time - fromMillis) / intervalMillis);
+            if (open[b] == 0) {
+                open[b] = price;
+            }
+            high[b] = Math.max(high[b], price);
+            low[b] = Math.min(low[b], price);
+            close[b] = price;
+        });
+        for (int b = 0; b < buckets; b++) {
+            if (low[b] == Long.MAX_VALUE) {
+                low[b] = 0;
+            }
+        }
+        return new long[][]{open, high, low, close};
+    }
+
+    public void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        List<Block> all = getBlocks();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(blockSize);
+        out.writeInt(all.size());
+        for (Block block : all) {
+            out.writeLong(block.startMillis);
+            out.writeLong(block.endMillis);
+            out.writeInt(block.count);
+            out.writeLong(block.firstCents);
+            out.writeLong(block.lastCents);
+            out.writeLong(block.minCents);
+            out.writeLong(block.maxCents);
+            out.writeInt(block.data.length);
+            out.write(block.data);
+        }
+        out.flush();
+    }
+
+    public static CompressedPriceHistory readFrom(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a price history file");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported price history version " + version);
+        }
+        int blockSize = in.readInt();
+        if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IOException("Bad block size " + blockSize);
+        }
+        CompressedPriceHistory history = new CompressedPriceHistory(blockSize);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long start = in.readLong();
+            long end = in.readLong();
+            int points = in.readInt();
+            if (points < 0 || points > blockSize) {
+                throw new IOException("Bad point count " + points + " in block " + i);
+            }
+            long first = in.readLong();
+            long last = in.readLong();
+            long min = in.readLong();
+            long max = in.readLong();
+            int length = in.readInt();
+            int minLength = points == 0 ? 0 : FIRST_POINT_BYTES + ((points - 1) * 2 + 7) / 8;
+            if (length < minLength || length > points * MAX_BYTES_PER_POINT) {
+                throw new IOException("Bad length " + length + " for " + points + " points in block " + i);
+            }
+            byte[] data = new byte[length];
+            in.readFully(data);
+            Block block = new Block(start, end, points, first, last, min, max, data);
+            // Decode once, so a corrupt block fails here instead of on a later range query
+            try {
+                block.decode((time, price) -> { });
+            } catch (IllegalStateException e) {
+                throw new IOException("Corrupt data in block " + i + ": " + e.getMessage());
+            }
+            history.blocks.add(block);
+        }
+        // Reopen a partially filled tail block so appends continue where they left off
+        if (!history.blocks.isEmpty()) {
+            Block tail = history.blocks.get(history.blocks.size() - 1);
+            if (tail.count < history.blockSize) {
+                history.blocks.remove(history.blocks.size() - 1);
+                history.open = new BlockEncoder(history.blockSize);
+                tail.decode((time, price) -> history.open.append(time / 1000, price));
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Streaming encoder for a single block.
+     */
+    static final class BlockEncoder {
+        private final BitWriter bits;
+        int count;
+        private long firstSeconds;
+        long lastSeconds;
+        private long lastDelta;
+        private long firstCents;
+        private long lastCents;
+        private long minCents = Long.MAX_VALUE;
+        private long maxCents = Long.MIN_VALUE;
+        private int lastLeading = -1;
+        private int lastTrailing;
+
+        BlockEncoder(int expectedPoints) {
+            bits = new BitWriter(16 + expectedPoints * 4);
+        }
+
+        // Delta-of-delta must fit the widest (32 bit) bucket
+        boolean canAppend(long seconds) {
+            if (count < 2) {
+                return count == 0 || seconds - lastSeconds <= Integer.MAX_VALUE;
+            }
+            long dod = (seconds - lastSeconds) - lastDelta;
+            return dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE;
+        }
+
+        void append(long seconds, long cents) {
+            if (count == 0) {
+                bits.write(seconds, 64);
+                bits.write(cents, 64);
+                firstSeconds = seconds;
+                firstCents = cents;
+            } else {
+                long delta = seconds - lastSeconds;
+                writeDeltaOfDelta(delta - lastDelta);
+                lastDelta = delta;
+                writeXor(cents ^ lastCents);
+            }
+            lastSeconds = seconds;
+            lastCents = cents;
+            minCents = Math.min(minCents, cents);
+            maxCents = Math.max(maxCents, cents);
+            count++;
+        }
+
+        private void writeDeltaOfDelta(long dod) {
+            if (dod == 0) {
+                bits.write(0, 1);
+            } else if (dod >= -64 && dod <= 63) {
+                bits.write(0b10, 2);
+                bits.write(dod, 7);
+            } else if (dod >= -256 && dod <= 255) {
+                bits.write(0b110, 3);
+                bits.write(dod, 9);
+            } else if (dod >= -2048 && dod <= 2047) {
+                bits.write(0b1110, 4);
+                bits.write(dod, 12);
+            } else {
+                bits.write(0b1111, 4);
+                bits.write(dod, 32);
+            }
+        }
+
+        private void writeXor(long xor) {
+            if (xor == 0) {
+                bits.write(0, 1);
+                return;
+            }
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 63);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (lastLeading >= 0 && leading >= lastLeading && trailing >= lastTrailing) {
+                // Meaningful bits fit inside the previous window
+                bits.write(0b10, 2);
+                bits.write(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+            } else {
+                int length = 64 - leading - trailing;
+                bits.write(0b11, 2);
+                bits.write(leading, 6);
+                bits.write(length - 1, 6);
+                bits.write(xor >>> trailing, length);
+                lastLeading = leading;
+                lastTrailing = trailing;
+            }
+        }
+
+        Block toBlock() {
+            return new Block(firstSeconds * 1000, lastSeconds * 1000, count, firstCents, lastCents,
+                    minCents, maxCents, bits.toByteArray());
+        }
+    }
+
+    /**
+     * Streaming decoder for a single block.
+     */
+    static final class BlockDecoder {
+        private final BitReader bits;
+        private final int count;
+        private int index;
+        private long seconds;
+        private long delta;
+        private long cents;
+        private int leading;
+        private int trailing;
+
+        BlockDecoder(byte[] data, int count) {
+            this.bits = new BitReader(data);
+            this.count = count;
+        }
+
+        boolean next() {
+            if (index >= count) {
+                return false;
+            }
+            if (index == 0) {
+                seconds = bits.read(64);
+                cents = bits.read(64);
+            } else {
+                delta += readDeltaOfDelta();
+                seconds += delta;
+                readXor();
+            }
+            index++;
+            return true;
+        }
+
+        long timeMillis() {
+            return seconds * 1000;
+        }
+
+        long priceCents() {
+            return cents;
+        }
+
+        private long readDeltaOfDelta() {
+            if (bits.read(1) == 0) return 0;
+            if (bits.read(1) == 0) return bits.readSigned(7);
+            if (bits.read(1) == 0) return bits.readSigned(9);
+            if (bits.read(1) == 0) return bits.readSigned(12);
+            return bits.readSigned(32);
+        }
+
+        private void readXor() {
+            if (bits.read(1) == 0) {
+                return;
+            }
+            if (bits.read(1) == 1) {
+                leading = (int) bits.read(6);
+                int length = (int) bits.read(6) + 1;
+                trailing = 64 - leading - length;
+            }
+            cents ^= bits.read(64 - leading - trailing) << trailing;
+        }
+    }
+
+    static final class BitWriter {
+        private byte[] buffer;
+        private long bitLength;
+
+        BitWriter(int initialBytes) {
+            buffer = new byte[Math.max(16, initialBytes)];
+        }
+
+        // Writes the low n bits of value, most significant first, a byte-sized chunk at a time
+        void write(long value, int n) {
+            while (n > 0) {
+                int byteIndex = (int) (bitLength >>> 3);
+                if (byteIndex >= buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int free = 8 - (int) (bitLength & 7);
+                int take = Math.min(free, n);
+                int chunk = (int) (value >>> (n - take)) & ((1 << take) - 1);
+                buffer[byteIndex] |= (byte) (chunk << (free - take));
+                n -= take;
+                bitLength += take;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, (int) ((bitLength + 7) >>> 3));
+        }
+    }
+
+    static final class BitReader {
+        private final byte[] buffer;
+        private long position;
+
+        BitReader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        long read(int n) {
+            if (position + n > (long) buffer.length * 8) {
+                throw new IllegalStateException("read past end of block at bit " + position);
+            }
+            long value = 0;
+            while (n > 0) {
+                int available = 8 - (int) (position & 7);
+                int take = Math.min(available, n);
+                int chunk = ((buffer[(int) (position >>> 3)] & 0xFF) >>> (available - take)) & ((1 << take) - 1);
+                value = (value << take) | chunk;
+                n -= take;
+                position += take;
+            }
+            return value;
+        }
+
+        long readSigned(int n) {
+            long value = read(n);
+            return (value << (64 - n)) >> (64 - n);
+        }
+    }
+}
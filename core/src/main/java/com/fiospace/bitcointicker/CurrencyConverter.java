@@ -0,0 +1,116 @@
+package com.fiospace.bitcointicker;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Fills in display-currency prices that an exchange didn't quote directly, by converting its USD
+ * price with cached FX rates.
+ *
+ * Fiat rates move slowly compared to BTC, so one rate table is fetched every
+ * {@link #REFRESH_MILLIS} and shared by every poll and every currency: showing N currencies costs
+ * one extra request every few hours rather than N per poll. If a refresh fails the previous table
+ * stays in use, and retries are spaced {@link #RETRY_MILLIS} apart.
+ *
+ * {@link #fill} never touches the network, so a slow FX endpoint can't hold up a poll; run
+ * {@link #refreshIfStale()} on its own thread.
+ */
+public class CurrencyConverter {
+    public static final String USD = "USD";
+
+    static final long REFRESH_MILLIS = 6 * 60 * 60 * 1000L;
+    static final long RETRY_MILLIS = 5 * 60 * 1000L;
+    private static final String FX_API_URL = "https://api.coinbase.com/v2/exchange-rates?currency=USD";
+
+    // Units of each currency per 1 USD
+    private final Map<String, BigDecimal> rates = new HashMap<>();
+    private long fetchedAt;
+    private long lastAttempt;
+
+    /**
+     * Adds a derived price to {@code quote} for every currency in the list it doesn't already
+     * have, using the cached rate table. Currencies with no known rate are left out.
+     */
+    public synchronized void fill(Quote quote, List<String> currencies) {
+        if (!quote.has(Quote.LAST)) {
+            return;
+        }
+        for (String currency : currencies) {
+            if (quote.hasPriceIn(currency)) {
+                continue;
+            }
+            BigDecimal rate = rates.get(currency);
+            if (rate != null) {
+                long converted = BigDecimal.valueOf(quote.lastCents).multiply(rate)
+                        .setScale(0, RoundingMode.HALF_UP).longValue();
+                quote.setPriceIn(currency, converted, true);
+            }
+        }
+    }
+
+    public synchronized BigDecimal getRate(String currency) {
+        return currency.equals(USD) ? BigDecimal.ONE : rates.get(currency);
+    }
+
+    public synchronized long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * Replaces the rate table, e.g. with rates restored from storage or set by a test.
+     */
+    public synchronized void setRates(Map<String, BigDecimal> newRates, long timestampMillis) {
+        rates.clear();
+        rates.putAll(newRates);
+        fetchedAt = timestampMillis;
+    }
+
+    /**
+     * Fetches a new rate table if the current one is stale and no attempt was made recently.
+     * Blocks for the request; {@link #fill} keeps using the old table meanwhile.
+     */
+    public void refreshIfStale() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (now - fetchedAt < REFRESH_MILLIS || now - lastAttempt < RETRY_MILLIS) {
+                return;
+            }
+            lastAttempt = now;
+        }
+        try {
+            Map<String, BigDecimal> fetched = parseRates(BitcoinPriceWrapper.readResponse("fx", FX_API_URL));
+            setRates(fetched, now);
+            System.out.println("Refreshed " + fetched.size() + " FX rates");
+        } catch (Exception e) {
+            System.err.println("Failed to refresh FX rates, keeping the cached table: " + e.getMessage());
+        }
+    }
+
+    // {"data":{"currency":"USD","rates":{"EUR":"0.92","GBP":"0.79",...}}}
+    static Map<String, BigDecimal> parseRates(String body) throws JSONException {
+        JSONObject json = new JSONObject(body);
+        JSONObject data = json.getJSONObject("data");
+        if (!USD.equals(data.optString("currency", USD))) {
+            throw new IllegalStateException("Expected USD rates, got " + data.optString("currency"));
+        }
+        JSONObject table = data.getJSONObject("rates");
+        Map<String, BigDecimal> parsed = new HashMap<>();
+        JSONArray currencies = table.names();
+        for (int i = 0; currencies != null && i < currencies.length(); i++) {
+            String currency = currencies.getString(i);
+            try {
+                parsed.put(currency, new BigDecimal(table.getString(currency)));
+            } catch (NumberFormatException e) {
+                // Skip the odd malformed entry rather than the whole table
+            }
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,513 @@
+package com.fiospace.bitcointicker;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Keeps an {@link OrderBook} in step with one exchange's incremental depth stream.
+ *
+ * Every feed follows the same shape: a snapshot (fetched over REST, or sent as the first message on
+ * the stream) followed by diffs that set absolute sizes per price level. Each exchange has its own
+ * way of proving nothing was missed in between, so each subclass checks it and reports
+ * {@link #RESYNC} on a gap; the caller then drops the book and starts over with a fresh snapshot.
+ *
+ * Feeds that take a REST snapshot extend {@link RestSnapshotFeed}; they buffer stream messages until
+ * it arrives, then replay the buffer so diffs that raced the snapshot are neither lost nor applied
+ * twice.
+ *
+ * Transport-free so the same code runs live in {@link DepthStream} and offline from a
+ * {@link ResponseRecording} in {@link ReplayHarness}.
+ */
+public abstract class DepthFeed {
+    public static final int APPLIED = 0;
+    public static final int IGNORED = 1;
+    public static final int RESYNC = 2;
+
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    // Recorded frames use status 101 (Switching Protocols) to tell them apart from REST snapshots
+    public static final int STATUS_STREAM_MESSAGE = 101;
+    public static final String RECORDING_SUFFIX = "-depth";
+
+    private static final int MAX_PENDING = 4096;
+    private static final List<String> SUPPORTED = Collections.unmodifiableList(
+            Arrays.asList("binance", "bitstamp", "coinbase", "kraken"));
+
+    protected final OrderBook book;
+    private boolean synced;
+    private long resyncCount;
+
+    protected DepthFeed(int capacity) {
+        book = new OrderBook(capacity);
+    }
+
+    /**
+     * @return a feed for the given exchange, or null if it has no depth stream
+     */
+    public static DepthFeed forExchange(String exchange) {
+        switch (exchange.trim().toLowerCase()) {
+            case "binance": return new Binance(DEFAULT_CAPACITY);
+            case "bitstamp": return new Bitstamp(DEFAULT_CAPACITY);
+            case "coinbase": return new Coinbase(DEFAULT_CAPACITY);
+            case "kraken": return new Kraken(Kraken.DEPTH);
+            default: return null;
+        }
+    }
+
+    public static List<String> getSupportedExchanges() {
+        return SUPPORTED;
+    }
+
+    public abstract String getExchange();
+
+    public abstract String getStreamUrl();
+
+    /**
+     * @return the message to send once the stream is open, or null if the URL already selects it
+     */
+    public String getSubscribeMessage() {
+        return null;
+    }
+
+    /**
+     * @return true for a {@link RestSnapshotFeed}, false when the snapshot arrives on the stream itself
+     */
+    public boolean hasRestSnapshot() {
+        return false;
+    }
+
+    public synchronized boolean isSynced() {
+        return synced;
+    }
+
+    public synchronized long getResyncCount() {
+        return resyncCount;
+    }
+
+    /**
+     * Drops the book and any buffered messages. Called on connect and after a gap.
+     */
+    public synchronized void reset() {
+        book.clear();
+        synced = false;
+    }
+
+    /**
+     * Handles one text frame from the stream.
+     *
+     * @return {@link #APPLIED}, {@link #IGNORED} (heartbeats, stale or buffered diffs) or
+     * {@link #RESYNC}, in which case the book has already been reset
+     */
+    public synchronized int onMessage(String text) {
+        return checked(text);
+    }
+
+    /**
+     * Copies the best levels of the live book under the feed's lock, so the copy is consistent.
+     */
+    public synchronized void copyTopTo(OrderBook target, int levels) {
+        book.copyTopTo(target, levels);
+    }
+
+    // Direct access for benchmarks and replay; callers must not hold on to it across messages
+    OrderBook getBook() {
+        return book;
+    }
+
+    int checked(String text) {
+        int result;
+        try {
+            result = applyMessage(text);
+        } catch (JSONException | RuntimeException e) {
+            return resync("malformed message: " + e.getMessage());
+        }
+        if (result == APPLIED && book.isCrossed()) {
+            return resync("book crossed");
+        }
+        return result;
+    }
+
+    protected int resync(String reason) {
+        System.err.println(getExchange() + " depth resync: " + reason);
+        resyncCount++;
+        reset();
+        return RESYNC;
+    }
+
+    protected void markSynced() {
+        synced = true;
+    }
+
+    protected boolean isSyncedLocked() {
+        return synced;
+    }
+
+    protected abstract int applyMessage(String text) throws JSONException;
+
+    // [["price", "size"], ...] as used by Binance and Bitstamp
+    protected void applyPairs(JSONArray levels, boolean bid) throws JSONException {
+        if (levels == null) {
+            return;
+        }
+        for (int i = 0; i < levels.length(); i++) {
+            JSONArray level = levels.getJSONArray(i);
+            book.update(bid, Quote.parseFixed(level.getString(0), 2), Quote.parseFixed(level.getString(1), 8));
+        }
+    }
+
+    /**
+     * A feed whose snapshot is fetched over REST from {@link #getSnapshotUrl()} and passed to
+     * {@link #onSnapshot}. Stream messages are buffered until then.
+     */
+    public abstract static class RestSnapshotFeed extends DepthFeed {
+        private final ArrayDeque<String> pending = new ArrayDeque<>();
+
+        protected RestSnapshotFeed(int capacity) {
+            super(capacity);
+        }
+
+        public abstract String getSnapshotUrl();
+
+        /**
+         * Loads a REST snapshot into the (already cleared) book.
+         */
+        protected abstract void applySnapshot(String body) throws JSONException;
+
+        @Override
+        public boolean hasRestSnapshot() {
+            return true;
+        }
+
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            pending.clear();
+        }
+
+        @Override
+        public synchronized int onMessage(String text) {
+            if (!isSyncedLocked()) {
+                if (pending.size() >= MAX_PENDING) {
+                    return resync("snapshot did not arrive within " + MAX_PENDING + " messages");
+                }
+                pending.add(text);
+                return IGNORED;
+            }
+            return checked(text);
+        }
+
+        /**
+         * Loads a REST snapshot and replays whatever the stream delivered while it was in flight.
+         *
+         * @return as {@link #onMessage}; a malformed snapshot resets the feed and returns {@link #RESYNC}
+         */
+        public synchronized int onSnapshot(String body) {
+            book.clear();
+            try {
+                applySnapshot(body);
+            } catch (JSONException | RuntimeException e) {
+                return resync("malformed snapshot: " + e.getMessage());
+            }
+            markSynced();
+            int result = IGNORED;
+            while (!pending.isEmpty()) {
+                int applied = checked(pending.poll());
+                if (applied == RESYNC) {
+                    return RESYNC;
+                }
+                if (applied == APPLIED) {
+                    result = APPLIED;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Binance: REST snapshot carries {@code lastUpdateId}; each diff carries its first and final
+     * update ids {@code U} and {@code u}. Diffs ending at or before the snapshot are stale, and a diff
+     * whose {@code U} skips past the next expected id means updates were lost.
+     */
+    static class Binance extends RestSnapshotFeed {
+        Binance(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public String getExchange() {
+            return "binance";
+        }
+
+        @Override
+        public String getStreamUrl() {
+            return "wss://stream.binance.com:9443/ws/btcusdt@depth@100ms";
+        }
+
+        @Override
+        public String getSnapshotUrl() {
+            return "https://api.binance.com/api/v3/depth?symbol=BTCUSDT&limit=" + book.getCapacity();
+        }
+
+        @Override
+        protected void applySnapshot(String body) throws JSONException {
+            JSONObject json = new JSONObject(body);
+            applyPairs(json.getJSONArray("bids"), true);
+            applyPairs(json.getJSONArray("asks"), false);
+            book.setSequence(json.getLong("lastUpdateId"));
+        }
+
+        @Override
+        protected int applyMessage(String text) throws JSONException {
+            JSONObject json = new JSONObject(text);
+            if (!"depthUpdate".equals(json.optString("e"))) {
+                return IGNORED;
+            }
+            long first = json.getLong("U");
+            long last = json.getLong("u");
+            if (last <= book.getSequence()) {
+                return IGNORED;
+            }
+            if (first > book.getSequence() + 1) {
+                return resync("gap after update " + book.getSequence() + ", next starts at " + first);
+            }
+            applyPairs(json.optJSONArray("b"), true);
+            applyPairs(json.optJSONArray("a"), false);
+            book.setSequence(last);
+            return APPLIED;
+        }
+    }
+
+    /**
+     * Bitstamp: REST snapshot and diffs both carry {@code microtimestamp}; diffs at or before the
+     * snapshot are already included in it. There are no sequence numbers, so a lost diff can only be
+     * noticed when the book crosses or the server asks for a reconnect.
+     */
+    static class Bitstamp extends RestSnapshotFeed {
+        Bitstamp(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public String getExchange() {
+            return "bitstamp";
+        }
+
+        @Override
+        public String getStreamUrl() {
+            return "wss://ws.bitstamp.net";
+        }
+
+        @Override
+        public String getSubscribeMessage() {
+            return "{\"event\":\"bts:subscribe\",\"data\":{\"channel\":\"diff_order_book_btcusd\"}}";
+        }
+
+        @Override
+        public String getSnapshotUrl() {
+            return "https://www.bitstamp.net/api/v2/order_book/btcusd/";
+        }
+
+        @Override
+        protected void applySnapshot(String body) throws JSONException {
+            JSONObject json = new JSONObject(body);
+            applyPairs(json.getJSONArray("bids"), true);
+            applyPairs(json.getJSONArray("asks"), false);
+            book.setSequence(json.getLong("microtimestamp"));
+        }
+
+        @Override
+        protected int applyMessage(String text) throws JSONException {
+            JSONObject json = new JSONObject(text);
+            String event = json.optString("event");
+            if (event.equals("bts:request_reconnect")) {
+                return resync("server requested reconnect");
+            }
+            if (!event.equals("data")) {
+                return IGNORED;
+            }
+            JSONObject data = json.getJSONObject("data");
+            long microtimestamp = data.getLong("microtimestamp");
+            if (microtimestamp <= book.getSequence()) {
+                return IGNORED;
+            }
+            applyPairs(data.optJSONArray("bids"), true);
+            applyPairs(data.optJSONArray("asks"), false);
+            book.setSequence(microtimestamp);
+            return APPLIED;
+        }
+    }
+
+    /**
+     * Coinbase Advanced Trade {@code level2}: the snapshot arrives on the stream, and every message
+     * on the connection, whatever its channel, carries a {@code sequence_num} one higher than the
+     * last.
+     */
+    static class Coinbase extends DepthFeed {
+        private long lastSequenceNum = -1;
+
+        Coinbase(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public String getExchange() {
+            return "coinbase";
+        }
+
+        @Override
+        public String getStreamUrl() {
+            return "wss://advanced-trade-ws.coinbase.com";
+        }
+
+        @Override
+        public String getSubscribeMessage() {
+            return "{\"type\":\"subscribe\",\"product_ids\":[\"BTC-USD\"],\"channel\":\"level2\"}";
+        }
+
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            lastSequenceNum = -1;
+        }
+
+        @Override
+        protected int applyMessage(String text) throws JSONException {
+            JSONObject json = new JSONObject(text);
+            long sequenceNum = json.optLong("sequence_num", -1);
+            if (sequenceNum >= 0) {
+                if (lastSequenceNum >= 0 && sequenceNum != lastSequenceNum + 1) {
+                    return resync("sequence " + lastSequenceNum + " followed by " + sequenceNum);
+                }
+                lastSequenceNum = sequenceNum;
+            }
+            if (!"l2_data".equals(json.optString("channel"))) {
+                return IGNORED;
+            }
+            JSONArray events = json.getJSONArray("events");
+            int result = IGNORED;
+            for (int i = 0; i < events.length(); i++) {
+                JSONObject event = events.getJSONObject(i);
+                if (event.optString("type").equals("snapshot")) {
+                    book.clear();
+                    markSynced();
+                } else if (!isSyncedLocked()) {
+                    continue;
+                }
+                JSONArray updates = event.getJSONArray("updates");
+                for (int j = 0; j < updates.length(); j++) {
+                    JSONObject update = updates.getJSONObject(j);
+                    book.update(update.getString("side").equals("bid"),
+                            Quote.parseFixed(update.getString("price_level"), 2),
+                            Quote.parseFixed(update.getString("new_quantity"), 8));
+                }
+                book.setSequence(sequenceNum);
+                result = APPLIED;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Kraken WebSocket v2 {@code book}: the snapshot arrives on the stream, and each message carries
+     * a CRC32 of the top ten levels. Recomputing it after every update catches both lost and
+     * misapplied diffs. Kraken does not send deletes for levels pushed out of the subscribed depth,
+     * so the book is truncated to that depth before checking.
+     */
+    static class Kraken extends DepthFeed {
+        static final int DEPTH = 100;
+        private static final int CHECKSUM_LEVELS = 10;
+        // XBT/USD trades in 0.1 USD ticks; prices are held in cents
+        private static final long PRICE_DIVISOR = 10;
+
+        private final CRC32 crc = new CRC32();
+        private final StringBuilder checksumText = new StringBuilder(512);
+
+        Kraken(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public String getExchange() {
+            return "kraken";
+        }
+
+        @Override
+        public String getStreamUrl() {
+            return "wss://ws.kraken.com/v2";
+        }
+
+        @Override
+        public String getSubscribeMessage() {
+            return "{\"method\":\"subscribe\",\"params\":{\"channel\":\"book\",\"symbol\":[\"BTC/USD\"],\"depth\":" + DEPTH + "}}";
+        }
+
+        @Override
+        protected int applyMessage(String text) throws JSONException {
+            JSONObject json = new JSONObject(text);
+            if (!"book".equals(json.optString("channel"))) {
+                return IGNORED;
+            }
+            boolean snapshot = json.optString("type").equals("snapshot");
+            if (snapshot) {
+                book.clear();
+                markSynced();
+            } else if (!isSyncedLocked()) {
+                return IGNORED;
+            }
+            JSONArray data = json.getJSONArray("data");
+            for (int i = 0; i < data.length(); i++) {
+                JSONObject entry = data.getJSONObject(i);
+                applyLevels(entry.optJSONArray("bids"), true);
+                applyLevels(entry.optJSONArray("asks"), false);
+                book.truncate(DEPTH);
+                if (entry.has("checksum")) {
+                    long expected = entry.getLong("checksum");
+                    long actual = checksum();
+                    if (expected != actual) {
+                        return resync("checksum " + actual + " != " + expected);
+                    }
+                }
+                book.setSequence(book.getSequence() + 1);
+            }
+            return APPLIED;
+        }
+
+        private void applyLevels(JSONArray levels, boolean bid) throws JSONException {
+            if (levels == null) {
+                return;
+            }
+            for (int i = 0; i < levels.length(); i++) {
+                JSONObject level = levels.getJSONObject(i);
+                book.update(bid, Quote.parseFixed(String.valueOf(level.get("price")), 2),
+                        Quote.parseFixed(String.valueOf(level.get("qty")), 8));
+            }
+        }
+
+        /**
+         * Kraken's book checksum: for the top ten asks then the top ten bids, the price and quantity
+         * at the pair's precision with the decimal point and leading zeros removed, concatenated and
+         * CRC32'd. At fixed precision that is just the two integers printed back to back.
+         */
+        long checksum() {
+            checksumText.setLength(0);
+            for (int i = 0; i < Math.min(CHECKSUM_LEVELS, book.getAskCount()); i++) {
+                checksumText.append(book.getAskPrice(i) / PRICE_DIVISOR).append(book.getAskSize(i));
+            }
+            for (int i = 0; i < Math.min(CHECKSUM_LEVELS, book.getBidCount()); i++) {
+                checksumText.append(book.getBidPrice(i) / PRICE_DIVISOR).append(book.getBidSize(i));
+            }
+            crc.reset();
+            for (int i = 0; i < checksumText.length(); i++) {
+                crc.update(checksumText.charAt(i));
+            }
+            return crc.getValue();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.fiospace.bitcointicker;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+/**
+ * Connects a {@link DepthFeed} to its exchange over a WebSocket and hands the top of the book to a
+ * listener.
+ *
+ * A gap reported by the feed, or any socket failure, closes the connection and reconnects with
+ * exponential backoff, which also fetches a fresh snapshot. Publishing is throttled to
+ * {@link #PUBLISH_INTERVAL_MILLIS} since diffs can arrive far faster than a display can use them.
+ */
+public class DepthStream {
+    static final long PUBLISH_INTERVAL_MILLIS = 250;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    public interface Listener {
+        // Called on the socket thread with a private copy of the top levels
+        void onDepth(String exchange, OrderBook top);
+    }
+
+    private static final OkHttpClient client = new OkHttpClient.Builder()
+            .pingInterval(20, TimeUnit.SECONDS)
+            .build();
+
+    private final DepthFeed feed;
+    private final int levels;
+    private final Listener listener;
+    private final String recordingKey;
+    private ScheduledExecutorService scheduler;
+    private WebSocket socket;
+    private volatile boolean running;
+    private long backoffMillis = INITIAL_BACKOFF_MILLIS;
+    private long lastPublished;
+
+    public DepthStream(DepthFeed feed, int levels, Listener listener) {
+        this.feed = feed;
+        this.levels = levels;
+        this.listener = listener;
+        this.recordingKey = feed.getExchange() + DepthFeed.RECORDING_SUFFIX;
+    }
+
+    public DepthFeed getFeed() {
+        return feed;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "depth-" + feed.getExchange());
+            thread.setDaemon(true);
+            return thread;
+        });
+        connect();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (socket != null) {
+            socket.close(1000, "stopped");
+            socket = null;
+        }
+        scheduler.shutdownNow();
+    }
+
+    private synchronized void connect() {
+        if (!running) {
+            return;
+        }
+        feed.reset();
+        System.out.println("Opening " + feed.getExchange() + " depth stream " + feed.getStreamUrl());
+        socket = client.newWebSocket(new Request.Builder().url(feed.getStreamUrl()).build(), new SocketListener());
+    }
+
+    // Drops the current socket and tries again later; a fresh connection always starts from a snapshot
+    private synchronized void reconnect(WebSocket failed) {
+        if (!running || failed != socket) {
+            return;
+        }
+        failed.cancel();
+        socket = null;
+        long delay = backoffMillis;
+        backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+        scheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized boolean isCurrent(WebSocket webSocket) {
+        return running && webSocket == socket;
+    }
+
+    private void fetchSnapshot(WebSocket webSocket, DepthFeed.RestSnapshotFeed snapshotFeed) {
+        try {
+            // Resolved under the exchange's own prefix so a base URL override reaches the stand-in,
+            // but recorded under the depth key next to the stream frames
+            String body = BitcoinPriceWrapper.readResponse(feed.getExchange(), recordingKey, snapshotFeed.getSnapshotUrl());
+            if (!isCurrent(webSocket)) {
+                return;
+            }
+            handle(webSocket, snapshotFeed.onSnapshot(body));
+        } catch (Exception e) {
+            System.err.println("Failed to fetch " + feed.getExchange() + " depth snapshot: " + e.getMessage());
+            reconnect(webSocket);
+        }
+    }
+
+    private void handle(WebSocket webSocket, int result) {
+        if (result == DepthFeed.RESYNC) {
+            reconnect(webSocket);
+            return;
+        }
+        if (result != DepthFeed.APPLIED) {
+            return;
+        }
+        synchronized (this) {
+            // A synced book means the connection is healthy again
+            backoffMillis = INITIAL_BACKOFF_MILLIS;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastPublished < PUBLISH_INTERVAL_MILLIS) {
+            return;
+        }
+        lastPublished = now;
+        OrderBook top = new OrderBook(levels);
+        feed.copyTopTo(top, levels);
+        listener.onDepth(feed.getExchange(), top);
+    }
+
+    /**
+     * Streams one exchange's book and prints the top of it, for checking a feed or capturing frames.
+     *
+     * Usage: {@code DepthStream <exchange> [--record=<file>] [--seconds=60]}
+     */
+    public static void main(String[] args) throws Exception {
+        DepthFeed feed = args.length > 0 ? DepthFeed.forExchange(args[0]) : null;
+        if (feed == null) {
+            System.err.println("Usage: DepthStream <" + String.join("|", DepthFeed.getSupportedExchanges())
+                    + "> [--record=<file>] [--seconds=60]");
+            return;
+        }
+        long seconds = 60;
+        ResponseRecording.Writer writer = null;
+        for (String arg : args) {
+            if (arg.startsWith("--record=")) {
+                writer = new ResponseRecording.Writer(new File(arg.substring("--record=".length())));
+                BitcoinPriceWrapper.setRecorder(writer);
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Long.parseLong(arg.substring("--seconds=".length()));
+            }
+        }
+        DepthStream stream = new DepthStream(feed, 10, (exchange, top) -> {
+            if (!top.isEmpty()) {
+                System.out.println(exchange + " bid " + top.getBidPrice(0) / 100.0 + " x " + top.getBidSize(0) / 1e8
+                        + "  ask " + top.getAskPrice(0) / 100.0 + " x " + top.getAskSize(0) / 1e8
+                        + "  seq " + top.getSequence());
+            }
+        });
+        stream.start();
+        Thread.sleep(seconds * 1000);
+        stream.stop();
+        BitcoinPriceWrapper.setRecorder(null);
+        if (writer != null) {
+            writer.close();
+            System.out.println("Recorded " + writer.getCount() + " responses and frames");
+        }
+        System.out.println("Resyncs: " + feed.getResyncCount());
+        // OkHttp keeps non-daemon threads alive for a while
+        System.exit(0);
+    }
+
+    private class SocketListener extends WebSocketListener {
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            String subscribe = feed.getSubscribeMessage();
+            if (subscribe != null) {
+                webSocket.send(subscribe);
+            }
+            if (feed.hasRestSnapshot()) {
+                // Off the socket thread so diffs keep buffering in the feed while the snapshot loads
+                scheduler.execute(() -> fetchSnapshot(webSocket, (DepthFeed.RestSnapshotFeed) feed));
+            }
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            if (!isCurrent(webSocket)) {
+                return;
+            }
+            ResponseRecording.Writer writer = BitcoinPriceWrapper.getRecorder();
+            if (writer != null) {
+                writer.record(recordingKey, System.currentTimeMillis(), DepthFeed.STATUS_STREAM_MESSAGE, text);
+            }
+            handle(webSocket, feed.onMessage(text));
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            System.err.println(feed.getExchange() + " depth stream closing: " + code + " " + reason);
+            reconnect(webSocket);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            System.err.println(feed.getExchange() + " depth stream failed: " + t.getMessage());
+            reconnect(webSocket);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.fiospace.bitcointicker;
+
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One polling round under a fixed time budget.
+ *
+ * Every source fetched in the round runs as an attempt on the given pool with its own slice of the
+ * remaining budget, split into connect, read and parse phases: {@link BitcoinPriceWrapper} sets the
+ * connect and read timeouts from the slice and drops a quote whose parse finished after it. When a
+ * slice runs out the attempt is cancelled: its connections are disconnected, which unblocks a
+ * socket read that a timeout alone might not (a server trickling bytes), and its thread is
+ * interrupted. The round then carries on with whatever arrived in time.
+ *
+ * A round counts as holding resources until it has finished and every attempt thread has actually
+ * exited; callers should not start the next round before {@link #isReleased()}.
+ */
+public class FetchRound {
+    // Of each attempt's slice: connect may use the first 30%, the response must be read by 85%,
+    // and parsing gets the rest
+    static final double CONNECT_SHARE = 0.30;
+    static final double READ_SHARE = 0.85;
+    // In fetchFirst, each attempt but the last may use this share of what is left of the round
+    static final double FALLBACK_SHARE = 0.5;
+    // How long finish() waits for cancelled attempts to exit
+    static final long RELEASE_GRACE_MILLIS = 1000;
+
+    private static final ThreadLocal<Attempt> current = new ThreadLocal<>();
+
+    private final ExecutorService pool;
+    private final long deadlineNanos;
+    private final List<Attempt> attempts = new ArrayList<>();
+    private volatile boolean finished;
+
+    /**
+     * Budget for one source within a round.
+     */
+    static final class Attempt {
+        final String source;
+        final long startNanos;
+        final long connectEndNanos;
+        final long readEndNanos;
+        final long endNanos;
+        final CountDownLatch exited = new CountDownLatch(1);
+        // Set by whichever comes first: the task starting, or a cancel while it is still queued
+        final AtomicBoolean claimed = new AtomicBoolean();
+        private final List<HttpURLConnection> connections = new ArrayList<>();
+        private Future<Quote> future;
+        private boolean cancelled;
+
+        Attempt(String source, long startNanos, long endNanos) {
+            this.source = source;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            long slice = endNanos - startNanos;
+            connectEndNanos = startNanos + (long) (slice * CONNECT_SHARE);
+            readEndNanos = startNanos + (long) (slice * READ_SHARE);
+        }
+
+        /**
+         * Applies this attempt's timeouts to a connection and tracks it so cancel() can drop it.
+         */
+        synchronized void register(HttpURLConnection connection) throws InterruptedIOException {
+            if (cancelled) {
+                throw new InterruptedIOException(source + " fetch cancelled: round budget spent");
+            }
+            long now = System.nanoTime();
+            connection.setConnectTimeout(timeoutMillis(connectEndNanos - now));
+            connection.setReadTimeout(timeoutMillis(readEndNanos - now));
+            connections.add(connection);
+        }
+
+        synchronized void unregister(HttpURLConnection connection) {
+            connections.remove(connection);
+        }
+
+        // Called once the body is parsed; a late quote is no use to a round that has moved on
+        void checkParseDeadline() throws TimeoutException {
+            if (System.nanoTime() > endNanos) {
+                throw new TimeoutException(source + " parsed after its deadline");
+            }
+        }
+
+        synchronized void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            for (HttpURLConnection connection : connections) {
+                connection.disconnect();
+            }
+            connections.clear();
+            if (future != null) {
+                future.cancel(true);
+            }
+            if (claimed.compareAndSet(false, true)) {
+                // Never started, so it will never count down itself
+                exited.countDown();
+            }
+        }
+
+        private static int timeoutMillis(long nanos) {
+            // 0 means no timeout to HttpURLConnection, so never go below 1 ms
+            return (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    public FetchRound(ExecutorService pool, long budgetMillis) {
+        this.pool = pool;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    /**
+     * The attempt running on this thread, or null outside a round.
+     */
+    static Attempt current() {
+        return current.get();
+    }
+
+    /**
+     * Tries the sources in order until one answers, giving each but the last
+     * {@link #FALLBACK_SHARE} of the remaining budget so a slow primary still leaves time for a
+     * fallback. Returns null if none answered in time.
+     */
+    public Quote fetchFirst(List<String> sources) {
+        for (int i = 0; i < sources.size(); i++) {
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0) {
+                System.err.println("Round budget spent before trying " + sources.get(i));
+                break;
+            }
+            boolean last = i == sources.size() - 1;
+            String source = sources.get(i);
+            long end = last ? deadlineNanos : System.nanoTime() + (long) (remaining * FALLBACK_SHARE);
+            Quote quote = await(start(source, end, () -> BitcoinPriceWrapper.fetchQuote(source, new Quote())));
+            if (quote != null) {
+                return quote;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fetches every source in parallel, each with the whole remaining budget, and returns the
+     * quotes that arrived in time in source order.
+     */
+    public List<Quote> fetchAll(List<String> sources) {
+        List<Attempt> started = new ArrayList<>();
+        for (String source : sources) {
+            started.add(start(source, deadlineNanos, () -> BitcoinPriceWrapper.fetchQuote(source, new Quote())));
+        }
+        List<Quote> quotes = new ArrayList<>();
+        for (Attempt attempt : started) {
+            Quote quote = await(attempt);
+            if (quote != null) {
+                quotes.add(quote);
+            }
+        }
+        return quotes;
+    }
+
+    /**
+     * Runs a single fetch, such as a relay request, with the whole remaining budget.
+     */
+    public Quote fetch(String source, Callable<Quote> task) {
+        return await(start(source, deadlineNanos, task));
+    }
+
+    /**
+     * Cancels anything still running and waits briefly for attempt threads to exit. Call once the
+     * round's results have been taken.
+     */
+    public void finish() {
+        List<Attempt> snapshot;
+        synchronized (attempts) {
+            finished = true;
+            snapshot = new ArrayList<>(attempts);
+        }
+        long graceEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RELEASE_GRACE_MILLIS);
+        for (Attempt attempt : snapshot) {
+            attempt.cancel();
+            try {
+                if (!attempt.exited.await(Math.max(0, graceEnd - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    System.err.println(attempt.source + " fetch still running after cancel");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * True once {@link #finish()} has run and no attempt thread is still alive, e.g. one stuck in a
+     * DNS lookup that neither a timeout nor a disconnect can interrupt.
+     */
+    public boolean isReleased() {
+        if (!finished) {
+            return false;
+        }
+        synchronized (attempts) {
+            for (Attempt attempt : attempts) {
+                if (attempt.exited.getCount() > 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Attempts whose threads have not exited yet.
+     */
+    public int getActiveCount() {
+        int active = 0;
+        synchronized (attempts) {
+            for (Attempt attempt : attempts) {
+                if (attempt.exited.getCount() > 0) {
+                    active++;
+                }
+            }
+        }
+        return active;
+    }
+
+    private Attempt start(String source, long endNanos, Callable<Quote> task) {
+        Attempt attempt = new Attempt(source, System.nanoTime(), Math.min(endNanos, deadlineNanos));
+        synchronized (attempts) {
+            attempts.add(attempt);
+        }
+        try {
+            Future<Quote> future = pool.submit(() -> {
+                if (!attempt.claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                current.set(attempt);
+                try {
+                    Quote quote = task.call();
+                    attempt.checkParseDeadline();
+                    return quote;
+                } finally {
+                    current.remove();
+                    attempt.exited.countDown();
+                }
+            });
+            synchronized (attempt) {
+                attempt.future = future;
+                if (attempt.cancelled) {
+                    future.cancel(true);
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            attempt.claimed.set(true);
+            attempt.exited.countDown();
+            System.err.println("Could not start " + source + " fetch: " + e.getMessage());
+        }
+        return attempt;
+    }
+
+    // Waits out the attempt's slice; on overrun cancels it and returns null
+    private Quote await(Attempt attempt) {
+        Future<Quote> future;
+        synchronized (attempt) {
+            future = attempt.future;
+        }
+        if (future == null) {
+            return null;
+        }
+        try {
+            return future.get(Math.max(0, attempt.endNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            System.err.println(attempt.source + " missed its " + TimeUnit.NANOSECONDS.toMillis(attempt.endNanos - attempt.startNanos)
+                    + " ms budget; cancelling");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.err.println(attempt.source + " failed: " + cause.getMessage());
+        }
+        attempt.cancel();
+        return null;
+    }
+}
@@ -0,0 +1,196 @@
+package com.fiospace.bitcointicker;
+
+import java.util.Arrays;
+
+/**
+ * Local price-level order book kept in sorted primitive arrays.
+ *
+ * Prices are fixed-point cents and sizes fixed-point 1e-8 BTC, as in {@link Quote}. Bids are sorted
+ * best (highest) first and asks best (lowest) first, so the top of the book is always index 0.
+ * Updates binary-search the level and shift the tail with {@link System#arraycopy}; near the top of
+ * the book, where almost all diffs land, that is a handful of element moves and no allocation.
+ *
+ * Each side holds at most {@code capacity} levels. A level that would fall past the end is dropped,
+ * so the book stays exact from the top down to the deepest level still held. Callers that only need
+ * the top N should keep the capacity comfortably above N so deletions near the top don't expose
+ * levels the book never saw.
+ */
+public class OrderBook {
+    private final int capacity;
+    private final long[] bidPrices;
+    private final long[] bidSizes;
+    private final long[] askPrices;
+    private final long[] askSizes;
+    private int bidCount;
+    private int askCount;
+
+    // Exchange-specific sequence of the last applied update, e.g. Binance's final update id
+    private long sequence;
+    private long updateCount;
+
+    public OrderBook(int capacity) {
+        this.capacity = capacity;
+        bidPrices = new long[capacity];
+        bidSizes = new long[capacity];
+        askPrices = new long[capacity];
+        askSizes = new long[capacity];
+    }
+
+    public void clear() {
+        bidCount = 0;
+        askCount = 0;
+        sequence = 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    public int getBidCount() {
+        return bidCount;
+    }
+
+    public int getAskCount() {
+        return askCount;
+    }
+
+    public long getBidPrice(int level) {
+        return bidPrices[level];
+    }
+
+    public long getBidSize(int level) {
+        return bidSizes[level];
+    }
+
+    public long getAskPrice(int level) {
+        return askPrices[level];
+    }
+
+    public long getAskSize(int level) {
+        return askSizes[level];
+    }
+
+    public boolean isEmpty() {
+        return bidCount == 0 || askCount == 0;
+    }
+
+    /**
+     * @return true when the best bid is at or above the best ask, which only happens if updates
+     * were missed
+     */
+    public boolean isCrossed() {
+        return bidCount > 0 && askCount > 0 && bidPrices[0] >= askPrices[0];
+    }
+
+    /**
+     * Sets the size at a price level, replacing any previous size. A size of zero removes the level.
+     */
+    public void update(boolean bid, long price, long size) {
+        updateCount++;
+        if (bid) {
+            bidCount = apply(bidPrices, bidSizes, bidCount, price, size, true);
+        } else {
+            askCount = apply(askPrices, askSizes, askCount, price, size, false);
+        }
+    }
+
+    /**
+     * Drops every level below the given depth, for feeds that stop sending deletes for levels that
+     * fall out of their subscribed range.
+     */
+    public void truncate(int depth) {
+        bidCount = Math.min(bidCount, depth);
+        askCount = Math.min(askCount, depth);
+    }
+
+    /**
+     * Total size of the best {@code levels} levels on one side, in 1e-8 BTC.
+     */
+    public long getCumulativeSize(boolean bid, int levels) {
+        long[] sizes = bid ? bidSizes : askSizes;
+        int count = Math.min(levels, bid ? bidCount : askCount);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += sizes[i];
+        }
+        return total;
+    }
+
+    /**
+     * Copies the best {@code levels} levels of each side into {@code target}, e.g. to hand a stable
+     * snapshot to the UI thread while this book keeps updating.
+     */
+    public void copyTopTo(OrderBook target, int levels) {
+        int bids = Math.min(Math.min(levels, bidCount), target.capacity);
+        int asks = Math.min(Math.min(levels, askCount), target.capacity);
+        System.arraycopy(bidPrices, 0, target.bidPrices, 0, bids);
+        System.arraycopy(bidSizes, 0, target.bidSizes, 0, bids);
+        System.arraycopy(askPrices, 0, target.askPrices, 0, asks);
+        System.arraycopy(askSizes, 0, target.askSizes, 0, asks);
+        target.bidCount = bids;
+        target.askCount = asks;
+        target.sequence = sequence;
+        target.updateCount = updateCount;
+    }
+
+    private int apply(long[] prices, long[] sizes, int count, long price, long size, boolean descending) {
+        int index = search(prices, count, price, descending);
+        if (index >= 0) {
+            if (size == 0) {
+                System.arraycopy(prices, index + 1, prices, index, count - index - 1);
+                System.arraycopy(sizes, index + 1, sizes, index, count - index - 1);
+                return count - 1;
+            }
+            sizes[index] = size;
+            return count;
+        }
+        if (size == 0) {
+            // Deleting a level we never held, e.g. one beyond capacity
+            return count;
+        }
+        int insertAt = -index - 1;
+        if (insertAt >= capacity) {
+            return count;
+        }
+        // When full, the worst level falls off the end
+        int moved = Math.min(count, capacity - 1) - insertAt;
+        System.arraycopy(prices, insertAt, prices, insertAt + 1, moved);
+        System.arraycopy(sizes, insertAt, sizes, insertAt + 1, moved);
+        prices[insertAt] = price;
+        sizes[insertAt] = size;
+        return Math.min(count + 1, capacity);
+    }
+
+    // Same contract as Arrays.binarySearch, with the comparison flipped for the bid side
+    static int search(long[] prices, int count, long price, boolean descending) {
+        if (!descending) {
+            return Arrays.binarySearch(prices, 0, count, price);
+        }
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = prices[mid];
+            if (value > price) {
+                low = mid + 1;
+            } else if (value < price) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
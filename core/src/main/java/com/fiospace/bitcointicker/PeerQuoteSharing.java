@@ -0,0 +1,354 @@
+package com.fiospace.bitcointicker;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares quotes between ticker displays on the same LAN so only one of them polls the exchanges.
+ *
+ * Every node multicasts a small heartbeat each second. The leader is the node that already claims
+ * leadership, or, when there is none (or more than one), the live node with the lowest id. Only the
+ * leader runs the fetch pipeline and multicasts each {@link Quote} as a compact binary datagram;
+ * followers consume those instead of polling. When the leader's heartbeats stop for
+ * {@link #PEER_TIMEOUT_MILLIS} the remaining nodes elect a new one.
+ *
+ * Several instances can run on one host: the socket is opened with address reuse and multicast
+ * loopback enabled, and each node ignores its own datagrams.
+ */
+public class PeerQuoteSharing {
+    public static final String DEFAULT_GROUP = "239.255.42.99";
+    public static final int DEFAULT_PORT = 47474;
+
+    static final long HEARTBEAT_MILLIS = 1000;
+    static final long PEER_TIMEOUT_MILLIS = 3500;
+
+    private static final short MAGIC = (short) 0xB7C1;
+    private static final byte VERSION = 1;
+    private static final byte TYPE_HEARTBEAT = 1;
+    private static final byte TYPE_QUOTE = 2;
+    private static final int MAX_DATAGRAM = 256;
+
+    public interface Listener {
+        // Called on the receive thread
+        void onQuote(Quote quote);
+
+        // Called on the scheduler thread
+        void onLeadershipChanged(boolean leader);
+    }
+
+    private final InetAddress group;
+    private final int port;
+    private final Listener listener;
+    private final long nodeId;
+    private final long startedAt;
+
+    // nodeId -> last heartbeat time; guarded by this
+    private final Map<Long, Long> peerSeen = new HashMap<>();
+    private final Map<Long, Boolean> peerClaimsLeader = new HashMap<>();
+
+    private volatile boolean leader;
+    private volatile boolean running;
+    private MulticastSocket socket;
+    private ScheduledExecutorService scheduler;
+    private Thread receiver;
+
+    public PeerQuoteSharing(Listener listener) throws IOException {
+        this(InetAddress.getByName(DEFAULT_GROUP), DEFAULT_PORT, listener);
+    }
+
+    public PeerQuoteSharing(InetAddress group, int port, Listener listener) {
+        // Positive so ordering is obvious in logs
+        this(group, port, listener, new SecureRandom().nextLong() & Long.MAX_VALUE, System.currentTimeMillis());
+    }
+
+    // Fixed id and start time, for tests that drive the election without sockets
+    PeerQuoteSharing(InetAddress group, int port, Listener listener, long nodeId, long startedAt) {
+        this.group = group;
+        this.port = port;
+        this.listener = listener;
+        this.nodeId = nodeId;
+        this.startedAt = startedAt;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public synchronized int getPeerCount() {
+        return peerSeen.size();
+    }
+
+    @SuppressWarnings("deprecation")
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        socket = new MulticastSocket(null);
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(port));
+        socket.setTimeToLive(1);
+        socket.setLoopbackMode(false); // false enables loopback, so peers on this host hear us
+        socket.joinGroup(group);
+        running = true;
+
+        receiver = new Thread(this::receiveLoop, "peer-quote-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "peer-quote-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::heartbeat, 0, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+        System.out.println("Peer node " + Long.toHexString(nodeId) + " joined " + group.getHostAddress() + ":" + port);
+    }
+
+    @SuppressWarnings("deprecation")
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        scheduler.shutdownNow();
+        try {
+            socket.leaveGroup(group);
+        } catch (IOException e) {
+            // Socket is going away anyway
+        }
+        socket.close();
+        if (leader) {
+            leader = false;
+            listener.onLeadershipChanged(false);
+        }
+    }
+
+    /**
+     * Multicasts a quote to the followers. Ignored unless this node is the leader.
+     */
+    public void publish(Quote quote) {
+        if (!leader || !running) {
+            return;
+        }
+        send(encodeQuote(nodeId, quote));
+    }
+
+    private void heartbeat() {
+        try {
+            send(encodeHeartbeat(nodeId, leader));
+            updateLeadership(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            System.err.println("Peer heartbeat failed: " + e.getMessage());
+        }
+    }
+
+    void updateLeadership(long now) {
+        boolean shouldLead = electSelf(now);
+        if (shouldLead != leader) {
+            leader = shouldLead;
+            System.out.println("Peer node " + Long.toHexString(nodeId) + (shouldLead ? " is now leader" : " is now follower"));
+            listener.onLeadershipChanged(shouldLead);
+        }
+    }
+
+    // Decides whether this node should lead, given the heartbeats seen so far
+    synchronized boolean electSelf(long now) {
+        for (Iterator<Map.Entry<Long, Long>> it = peerSeen.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Long> entry = it.next();
+            if (now - entry.getValue() > PEER_TIMEOUT_MILLIS) {
+                it.remove();
+                peerClaimsLeader.remove(entry.getKey());
+            }
+        }
+        // Listen for a full timeout before claiming, so a restarted node doesn't depose a live leader
+        if (!leader && now - startedAt < PEER_TIMEOUT_MILLIS) {
+            return false;
+        }
+        long lowestClaimant = leader ? nodeId : Long.MAX_VALUE;
+        long lowestPeer = nodeId;
+        for (Map.Entry<Long, Long> entry : peerSeen.entrySet()) {
+            long id = entry.getKey();
+            lowestPeer = Math.min(lowestPeer, id);
+            if (Boolean.TRUE.equals(peerClaimsLeader.get(id))) {
+                lowestClaimant = Math.min(lowestClaimant, id);
+            }
+        }
+        if (lowestClaimant != Long.MAX_VALUE) {
+            // Keep the incumbent; if several claim, the lowest id wins
+            return lowestClaimant == nodeId;
+        }
+        return lowestPeer == nodeId;
+    }
+
+    synchronized void recordHeartbeat(long peerId, boolean claimsLeader, long now) {
+        peerSeen.put(peerId, now);
+        peerClaimsLeader.put(peerId, claimsLeader);
+    }
+
+    private void receiveLoop() {
+        byte[] buffer = new byte[MAX_DATAGRAM];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        Quote quote = new Quote();
+        while (running) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                ByteBuffer in = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength());
+                if (in.remaining() < 12 || in.getShort() != MAGIC || in.get() != VERSION) {
+                    continue;
+                }
+                byte type = in.get();
+                long sender = in.getLong();
+                if (sender == nodeId) {
+                    continue;
+                }
+                if (type == TYPE_HEARTBEAT) {
+                    recordHeartbeat(sender, (in.get() & 1) != 0, System.currentTimeMillis());
+                } else if (type == TYPE_QUOTE) {
+                    // Any quote implies the sender is alive and leading
+                    recordHeartbeat(sender, true, System.currentTimeMillis());
+                    decodeQuote(in, quote);
+                    listener.onQuote(quote);
+                }
+            } catch (SocketException e) {
+                // Closed by stop()
+                return;
+            } catch (IOException e) {
+                System.err.println("Peer receive failed: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // A malformed datagram or a failing listener costs one quote, not the loop
+                System.err.println("Dropped peer datagram: " + e);
+            }
+        }
+    }
+
+    private void send(ByteBuffer data) {
+        try {
+            socket.send(new DatagramPacket(data.array(), data.position(), group, port));
+        } catch (IOException e) {
+            System.err.println("Failed to send peer datagram: " + e.getMessage());
+        }
+    }
+
+    private static ByteBuffer header(byte type, long nodeId) {
+        ByteBuffer out = ByteBuffer.allocate(MAX_DATAGRAM);
+        out.putShort(MAGIC).put(VERSION).put(type).putLong(nodeId);
+        return out;
+    }
+
+    static ByteBuffer encodeHeartbeat(long nodeId, boolean leader) {
+        return header(TYPE_HEARTBEAT, nodeId).put((byte) (leader ? 1 : 0));
+    }
+
+    static ByteBuffer encodeQuote(long nodeId, Quote quote) {
+        ByteBuffer out = header(TYPE_QUOTE, nodeId);
+        out.putLong(quote.timestampMillis).putInt(quote.getFields())
+                .putLong(quote.lastCents).putLong(quote.bidCents).putLong(quote.askCents)
+                .putLong(quote.highCents).putLong(quote.lowCents).putLong(quote.openCents)
+                .putLong(quote.vwapCents).putLong(quote.volume);
+        byte[] exchange = (quote.exchange != null ? quote.exchange : "").getBytes(StandardCharsets.US_ASCII);
+        out.put((byte) Math.min(exchange.length, 32)).put(exchange, 0, Math.min(exchange.length, 32));
+        return out;
+    }
+
+    static void decodeQuote(ByteBuffer in, Quote quote) {
+        long timestamp = in.getLong();
+        int fields = in.getInt();
+        long last = in.getLong();
+        long bid = in.getLong();
+        long ask = in.getLong();
+        long high = in.getLong();
+        long low = in.getLong();
+        long open = in.getLong();
+        long vwap = in.getLong();
+        long volume = in.getLong();
+        int length = in.get() & 0xFF;
+        if (length > in.remaining()) {
+            throw new IllegalArgumentException("Exchange name of " + length + " bytes overruns datagram");
+        }
+        byte[] exchange = new byte[length];
+        in.get(exchange);
+        quote.set(new String(exchange, StandardCharsets.US_ASCII), timestamp, fields,
+                last, bid, ask, high, low, open, vwap, volume);
+    }
+
+    /**
+     * Runs a standalone node for testing several instances on one host.
+     *
+     * Options: {@code --fake} publishes a synthetic random walk instead of polling the exchanges,
+     * {@code --interval-ms=<n>} sets the leader's poll interval (default 5000),
+     * {@code --source=<exchange>} picks the exchange to poll (default coinbase).
+     */
+    public static void main(String[] args) throws Exception {
+        boolean fake = false;
+        long interval = 5000;
+        String source = "coinbase";
+        for (String arg : args) {
+            if (arg.equals("--fake")) {
+                fake = true;
+            } else if (arg.startsWith("--interval-ms=")) {
+                interval = Long.parseLong(arg.substring("--interval-ms=".length()));
+            } else if (arg.startsWith("--source=")) {
+                source = arg.substring("--source=".length());
+            }
+        }
+
+        PeerQuoteSharing node = new PeerQuoteSharing(new Listener() {
+            @Override
+            public void onQuote(Quote quote) {
+                System.out.println("received " + quote.exchange + " " + BitcoinPriceWrapper.formatPrice(quote.getLast()));
+            }
+
+            @Override
+            public void onLeadershipChanged(boolean leader) {
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(node::stop));
+        node.start();
+
+        Quote quote = new Quote();
+        long fakeCents = 6_700_000L;
+        while (true) {
+            Thread.sleep(interval);
+            if (!node.isLeader()) {
+                continue;
+            }
+            try {
+                if (fake) {
+                    fakeCents += (long) ((Math.random() - 0.5) * 10_000);
+                    quote.reset("fake");
+                    quote.setLast(Long.toString(fakeCents / 100));
+                    quote.timestampMillis = System.currentTimeMillis();
+                } else {
+                    BitcoinPriceWrapper.fetchQuote(source, quote);
+                }
+                System.out.println("published " + quote.exchange + " " + BitcoinPriceWrapper.formatPrice(quote.getLast()));
+                node.publish(quote);
+            } catch (Exception e) {
+                System.err.println(e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.fiospace.bitcointicker;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates user defined price alerts against incoming ticks.
+ *
+ * Threshold rules (cross above / cross below) are kept in sorted primitive arrays keyed by their
+ * level, so a tick only visits the rules whose level lies between the previous and the current
+ * price instead of scanning every rule. Percent-move and source-divergence rules are few by nature
+ * and are evaluated on each tick. Divergence only compares source prices younger than
+ * {@link #SOURCE_MAX_AGE_MILLIS}, so a source that stopped answering drops out of the spread.
+ *
+ * Prices are handled as fixed-point cents ({@code long}) to avoid BigDecimal allocation per tick.
+ * The engine is not thread-safe; call it from a single thread (the fetch executor).
+ */
+public class PriceAlertEngine {
+
+    public enum Type { CROSS_ABOVE, CROSS_BELOW, PERCENT_MOVE, DIVERGENCE }
+
+    public interface AlertListener {
+        void onAlert(Rule rule, long priceCents);
+    }
+
+    public static final class Rule {
+        public final int id;
+        public final Type type;
+        // CROSS_*: level in cents. PERCENT_MOVE / DIVERGENCE: threshold in basis points.
+        public final long value;
+        // PERCENT_MOVE only: look-back window in milliseconds.
+        public final long windowMillis;
+
+        Rule(int id, Type type, long value, long windowMillis) {
+            this.id = id;
+            this.type = type;
+            this.value = value;
+            this.windowMillis = windowMillis;
+        }
+
+        // Identifies the rule across edits of the rule list, which renumber ids
+        String key() {
+            return type + ":" + value + ":" + windowMillis;
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case CROSS_ABOVE:
+                    return "above " + BitcoinPriceWrapper.formatPrice(BigDecimal.valueOf(value, 2));
+                case CROSS_BELOW:
+                    return "below " + BitcoinPriceWrapper.formatPrice(BigDecimal.valueOf(value, 2));
+                case PERCENT_MOVE:
+                    return "moved " + BigDecimal.valueOf(value, 2) + "% in " + (windowMillis / 60000) + " min";
+                default:
+                    return "sources diverged " + BigDecimal.valueOf(value, 2) + "%";
+            }
+        }
+    }
+
+    private static final int HISTORY_CAPACITY = 4096;
+    public static final long SOURCE_MAX_AGE_MILLIS = 60_000;
+
+    private final List<Rule> rules = new ArrayList<>();
+    private AlertListener listener;
+
+    // Sorted threshold indexes, rebuilt lazily after rules change
+    private long[] aboveLevels = new long[0];
+    private int[] aboveIds = new int[0];
+    private long[] belowLevels = new long[0];
+    private int[] belowIds = new int[0];
+    private int[] moveIds = new int[0];
+    private String[] moveKeys = new String[0];
+    private long[] moveLastFired = new long[0];
+    private int[] divergenceIds = new int[0];
+    private String[] divergenceKeys = new String[0];
+    private boolean[] divergenceOpen = new boolean[0];
+    private boolean dirty;
+
+    // Ring buffer of recent ticks for percent-move rules
+    private final long[] historyTimes = new long[HISTORY_CAPACITY];
+    private final long[] historyPrices = new long[HISTORY_CAPACITY];
+    private int historyStart;
+    private int historySize;
+
+    private long lastPrice = Long.MIN_VALUE;
+    private final Map<String, SourcePrice> sourcePrices = new HashMap<>();
+
+    private static final class SourcePrice {
+        long cents;
+        long timeMillis;
+    }
+
+    public void setListener(AlertListener listener) {
+        this.listener = listener;
+    }
+
+    public int addCrossAbove(long levelCents) {
+        return addRule(Type.CROSS_ABOVE, levelCents, 0);
+    }
+
+    public int addCrossBelow(long levelCents) {
+        return addRule(Type.CROSS_BELOW, levelCents, 0);
+    }
+
+    public int addPercentMove(long basisPoints, long windowMillis) {
+        return addRule(Type.PERCENT_MOVE, basisPoints, windowMillis);
+    }
+
+    public int addDivergence(long basisPoints) {
+        return addRule(Type.DIVERGENCE, basisPoints, 0);
+    }
+
+    public void clear() {
+        rules.clear();
+        dirty = true;
+    }
+
+    public int getRuleCount() {
+        return rules.size();
+    }
+
+    private int addRule(Type type, long value, long windowMillis) {
+        int id = rules.size();
+        rules.add(new Rule(id, type, value, windowMillis));
+        dirty = true;
+        return id;
+    }
+
+    /**
+     * Parses a rule list such as {@code "above:70000;below:60000;move:5:60;diverge:0.5"}.
+     * Moves are given as percent and window in minutes, divergence as percent. Malformed entries
+     * are skipped.
+     *
+     * @return the entries that were skipped, for the caller to report
+     */
+    public List<String> addRulesFromSpec(String spec) {
+        List<String> rejected = new ArrayList<>();
+        if (spec == null) {
+            return rejected;
+        }
+        for (String entry : spec.split(";")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = entry.trim().toLowerCase().split(":");
+            try {
+                switch (parts[0]) {
+                    case "above":
+                        addCrossAbove(toCents(new BigDecimal(parts[1])));
+                        break;
+                    case "below":
+                        addCrossBelow(toCents(new BigDecimal(parts[1])));
+                        break;
+                    case "move":
+                        addPercentMove(toCents(new BigDecimal(parts[1])), Long.parseLong(parts[2]) * 60000L);
+                        break;
+                    case "diverge":
+                        addDivergence(toCents(new BigDecimal(parts[1])));
+                        break;
+                    default:
+                        rejected.add(entry);
+                        break;
+                }
+            } catch (RuntimeException e) {
+                rejected.add(entry);
+            }
+        }
+        return rejected;
+    }
+
+    public static long toCents(BigDecimal price) {
+        return price.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    /**
+     * Feeds a consensus tick. Fires every threshold crossed between the previous and this price,
+     * plus any percent-move rule whose window is exceeded.
+     *
+     * @return number of alerts fired
+     */
+    public int onTick(long priceCents, long timeMillis) {
+        rebuildIfDirty();
+        int fired = 0;
+        long previous = lastPrice;
+        lastPrice = priceCents;
+
+        if (previous != Long.MIN_VALUE) {
+            if (priceCents > previous) {
+                // Levels in (previous, priceCents]
+                int from = upperBound(aboveLevels, previous);
+                int to = upperBound(aboveLevels, priceCents);
+                for (int i = from; i < to; i++) {
+                    fire(aboveIds[i], priceCents);
+                }
+                fired += to - from;
+            } else if (priceCents < previous) {
+                // Levels in [priceCents, previous)
+                int from = lowerBound(belowLevels, priceCents);
+                int to = lowerBound(belowLevels, previous);
+                for (int i = from; i < to; i++) {
+                    fire(belowIds[i], priceCents);
+                }
+                fired += to - from;
+            }
+        }
+
+        appendHistory(timeMillis, priceCents);
+        for (int i = 0; i < moveIds.length; i++) {
+            Rule rule = rules.get(moveIds[i]);
+            // Fire at most once per window so a sustained move doesn't alert on every tick
+            if (timeMillis - moveLastFired[i] < rule.windowMillis) {
+                continue;
+            }
+            long reference = priceAtOrAfter(timeMillis - rule.windowMillis);
+            if (reference > 0 && Math.abs(priceCents - reference) * 10000L >= rule.value * reference) {
+                moveLastFired[i] = timeMillis;
+                fire(rule.id, priceCents);
+                fired++;
+            }
+        }
+        return fired;
+    }
+
+    public boolean hasDivergenceRules() {
+        rebuildIfDirty();
+        return divergenceIds.length > 0;
+    }
+
+    /**
+     * Records the latest price seen from an individual source and evaluates divergence rules
+     * against the spread between the highest and lowest source prices seen within
+     * {@link #SOURCE_MAX_AGE_MILLIS} of this one.
+     *
+     * @return number of alerts fired
+     */
+    public int onSourceQuote(String source, long priceCents, long timeMillis) {
+        rebuildIfDirty();
+        SourcePrice latest = sourcePrices.get(source);
+        if (latest == null) {
+            latest = new SourcePrice();
+            sourcePrices.put(source, latest);
+        }
+        latest.cents = priceCents;
+        latest.timeMillis = timeMillis;
+
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (Iterator<SourcePrice> it = sourcePrices.values().iterator(); it.hasNext(); ) {
+            SourcePrice p = it.next();
+            if (timeMillis - p.timeMillis > SOURCE_MAX_AGE_MILLIS) {
+                it.remove();
+                continue;
+            }
+            min = Math.min(min, p.cents);
+            max = Math.max(max, p.cents);
+        }
+        if (sourcePrices.size() < 2) {
+            return 0;
+        }
+        // Each rule alerts when the spread opens past its threshold, not on every quote while it
+        // stays open, and re-arms once the spread closes below it again
+        int fired = 0;
+        for (int i = 0; i < divergenceIds.length; i++) {
+            Rule rule = rules.get(divergenceIds[i]);
+            boolean open = (max - min) * 10000L >= rule.value * min;
+            if (open && !divergenceOpen[i]) {
+                fire(rule.id, priceCents);
+                fired++;
+            }
+            divergenceOpen[i] = open;
+        }
+        return fired;
+    }
+
+    private void fire(int id, long priceCents) {
+        if (listener != null) {
+            listener.onAlert(rules.get(id), priceCents);
+        }
+    }
+
+    private void rebuildIfDirty() {
+        if (!dirty) {
+            return;
+        }
+        int above = 0, below = 0, move = 0, divergence = 0;
+        for (Rule rule : rules) {
+            switch (rule.type) {
+                case CROSS_ABOVE: above++; break;
+                case CROSS_BELOW: below++; break;
+                case PERCENT_MOVE: move++; break;
+                default: divergence++; break;
+            }
+        }
+        // Pack (level, id) pairs into arrays and sort them by level
+        long[] aboveKeys = new long[above];
+        long[] belowKeys = new long[below];
+        int[] aboveIndex = new int[above];
+        int[] belowIndex = new int[below];
+        // Rules that survive an edit keep their fired state, so saving the list doesn't re-alert
+        Map<String, Long> previousFired = new HashMap<>();
+        for (int i = 0; i < moveKeys.length; i++) {
+            previousFired.put(moveKeys[i], moveLastFired[i]);
+        }
+        Map<String, Boolean> previousOpen = new HashMap<>();
+        for (int i = 0; i < divergenceKeys.length; i++) {
+            previousOpen.put(divergenceKeys[i], divergenceOpen[i]);
+        }
+        moveIds = new int[move];
+        moveKeys = new String[move];
+        moveLastFired = new long[move];
+        divergenceIds = new int[divergence];
+        divergenceKeys = new String[divergence];
+        divergenceOpen = new boolean[divergence];
+        above = below = move = divergence = 0;
+        for (Rule rule : rules) {
+            switch (rule.type) {
+                case CROSS_ABOVE: aboveKeys[above] = rule.value; aboveIndex[above++] = rule.id; break;
+                case CROSS_BELOW: belowKeys[below] = rule.value; belowIndex[below++] = rule.id; break;
+                case PERCENT_MOVE:
+                    moveKeys[move] = rule.key();
+                    moveLastFired[move] = previousFired.getOrDefault(rule.key(), Long.MIN_VALUE / 2);
+                    moveIds[move++] = rule.id;
+                    break;
+                default:
+                    divergenceKeys[divergence] = rule.key();
+                    divergenceOpen[divergence] = previousOpen.getOrDefault(rule.key(), false);
+                    divergenceIds[divergence++] = rule.id;
+                    break;
+            }
+        }
+        aboveLevels = new long[aboveKeys.length];
+        aboveIds = new int[aboveKeys.length];
+        sortByLevel(aboveKeys, aboveIndex, aboveLevels, aboveIds);
+        belowLevels = new long[belowKeys.length];
+        belowIds = new int[belowKeys.length];
+        sortByLevel(belowKeys, belowIndex, belowLevels, belowIds);
+        dirty = false;
+    }
+
+    private static void sortByLevel(long[] keys, int[] ids, long[] sortedKeys, int[] sortedIds) {
+        // Rebuilds only happen when rules change, so boxing the permutation here is fine;
+        // the per-tick path touches nothing but the primitive arrays.
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        for (int i = 0; i < order.length; i++) {
+            sortedKeys[i] = keys[order[i]];
+            sortedIds[i] = ids[order[i]];
+        }
+    }
+
+    // First index whose value is >= key
+    private static int lowerBound(long[] values, long key) {
+        int lo = 0, hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // First index whose value is > key
+    private static int upperBound(long[] values, long key) {
+        int lo = 0, hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private void appendHistory(long timeMillis, long priceCents) {
+        int index = (historyStart + historySize) % HISTORY_CAPACITY;
+        historyTimes[index] = timeMillis;
+        historyPrices[index] = priceCents;
+        if (historySize < HISTORY_CAPACITY) {
+            historySize++;
+        } else {
+            historyStart = (historyStart + 1) % HISTORY_CAPACITY;
+        }
+    }
+
+    // Oldest recorded price at or after the given time, or -1 when history is empty
+    private long priceAtOrAfter(long timeMillis) {
+        int lo = 0, hi = historySize;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (historyTimes[(historyStart + mid) % HISTORY_CAPACITY] < timeMillis) lo = mid + 1; else hi = mid;
+        }
+        if (lo >= historySize) {
+            return -1;
+        }
+        return historyPrices[(historyStart + lo) % HISTORY_CAPACITY];
+    }
+}
@@ -0,0 +1,259 @@
+package com.fiospace.bitcointicker;
+
+import java.math.BigDecimal;
+
+/**
+ * Mutable ticker snapshot filled in a single parse pass by {@link BitcoinPriceWrapper}.
+ *
+ * Prices are fixed-point cents and volume is fixed-point 1e-8 BTC so one instance can be reused
+ * for every poll without allocating. Exchanges only return a subset of fields; check
+ * {@link #has(int)} before reading an optional one.
+ *
+ * The ticker fields are always USD. Prices in other display currencies, taken from the same
+ * response when the exchange returns several pairs at once or derived by
+ * {@link CurrencyConverter}, are kept in a small side table.
+ */
+public class Quote {
+    public static final int LAST = 1;
+    public static final int BID = 1 << 1;
+    public static final int ASK = 1 << 2;
+    public static final int HIGH = 1 << 3;
+    public static final int LOW = 1 << 4;
+    public static final int OPEN = 1 << 5;
+    public static final int VOLUME = 1 << 6;
+    public static final int VWAP = 1 << 7;
+
+    public static final long VOLUME_SCALE = 100_000_000L;
+    public static final int MAX_CURRENCIES = 8;
+
+    public String exchange;
+    public long timestampMillis;
+    public long lastCents;
+    public long bidCents;
+    public long askCents;
+    public long highCents;
+    public long lowCents;
+    public long openCents;
+    public long vwapCents;
+    // 24h base volume in 1e-8 BTC
+    public long volume;
+    private int fields;
+
+    // Last price in other currencies, in hundredths of the currency unit
+    private final String[] currencyCodes = new String[MAX_CURRENCIES];
+    private final long[] currencyPrices = new long[MAX_CURRENCIES];
+    private final boolean[] currencyDerived = new boolean[MAX_CURRENCIES];
+    private int currencyCount;
+
+    public void reset(String exchange) {
+        this.exchange = exchange;
+        timestampMillis = 0;
+        lastCents = bidCents = askCents = highCents = lowCents = openCents = vwapCents = volume = 0;
+        fields = 0;
+        currencyCount = 0;
+    }
+
+    public boolean has(int field) {
+        return (fields & field) == field;
+    }
+
+    public int getFields() {
+        return fields;
+    }
+
+    public void copyFrom(Quote other) {
+        exchange = other.exchange;
+        timestampMillis = other.timestampMillis;
+        lastCents = other.lastCents;
+        bidCents = other.bidCents;
+        askCents = other.askCents;
+        highCents = other.highCents;
+        lowCents = other.lowCents;
+        openCents = other.openCents;
+        vwapCents = other.vwapCents;
+        volume = other.volume;
+        fields = other.fields;
+        currencyCount = other.currencyCount;
+        System.arraycopy(other.currencyCodes, 0, currencyCodes, 0, currencyCount);
+        System.arraycopy(other.currencyPrices, 0, currencyPrices, 0, currencyCount);
+        System.arraycopy(other.currencyDerived, 0, currencyDerived, 0, currencyCount);
+    }
+
+    /**
+     * Restores every field at once, e.g. from a peer datagram.
+     */
+    public void set(String exchange, long timestampMillis, int fields, long lastCents, long bidCents,
+                    long askCents, long highCents, long lowCents, long openCents, long vwapCents, long volume) {
+        this.exchange = exchange;
+        this.timestampMillis = timestampMillis;
+        this.fields = fields;
+        this.lastCents = lastCents;
+        this.bidCents = bidCents;
+        this.askCents = askCents;
+        this.highCents = highCents;
+        this.lowCents = lowCents;
+        this.openCents = openCents;
+        this.vwapCents = vwapCents;
+        this.volume = volume;
+        currencyCount = 0;
+    }
+
+    // Setters take the decimal strings exchanges return; null or empty leaves the field unset
+
+    public void setLast(String value) {
+        if (isPresent(value)) { lastCents = parseFixed(value, 2); fields |= LAST; }
+    }
+
+    public void setBid(String value) {
+        if (isPresent(value)) { bidCents = parseFixed(value, 2); fields |= BID; }
+    }
+
+    public void setAsk(String value) {
+        if (isPresent(value)) { askCents = parseFixed(value, 2); fields |= ASK; }
+    }
+
+    public void setHigh(String value) {
+        if (isPresent(value)) { highCents = parseFixed(value, 2); fields |= HIGH; }
+    }
+
+    public void setLow(String value) {
+        if (isPresent(value)) { lowCents = parseFixed(value, 2); fields |= LOW; }
+    }
+
+    public void setOpen(String value) {
+        if (isPresent(value)) { openCents = parseFixed(value, 2); fields |= OPEN; }
+    }
+
+    public void setOpenCents(long value) {
+        openCents = value;
+        fields |= OPEN;
+    }
+
+    public void setVwap(String value) {
+        if (isPresent(value)) { vwapCents = parseFixed(value, 2); fields |= VWAP; }
+    }
+
+    public void setVolume(String value) {
+        if (isPresent(value)) { volume = parseFixed(value, 8); fields |= VOLUME; }
+    }
+
+    public BigDecimal getLast() {
+        return BigDecimal.valueOf(lastCents, 2);
+    }
+
+    /**
+     * Records the last price in another currency, quoted directly by the exchange.
+     */
+    public void setPriceIn(String currency, String value) {
+        if (isPresent(value)) {
+            setPriceIn(currency, parseFixed(value, 2), false);
+        }
+    }
+
+    /**
+     * @param hundredths price in hundredths of the currency unit
+     * @param derived    true when converted from USD rather than quoted directly
+     */
+    public void setPriceIn(String currency, long hundredths, boolean derived) {
+        int index = indexOfCurrency(currency);
+        if (index < 0) {
+            if (currencyCount == MAX_CURRENCIES) {
+                return;
+            }
+            index = currencyCount++;
+            currencyCodes[index] = currency;
+        }
+        currencyPrices[index] = hundredths;
+        currencyDerived[index] = derived;
+    }
+
+    public boolean hasPriceIn(String currency) {
+        return currency.equals(CurrencyConverter.USD) ? has(LAST) : indexOfCurrency(currency) >= 0;
+    }
+
+    /**
+     * @return the last price in the given currency, or null if it wasn't quoted or converted
+     */
+    public BigDecimal getPriceIn(String currency) {
+        if (currency.equals(CurrencyConverter.USD)) {
+            return has(LAST) ? getLast() : null;
+        }
+        int index = indexOfCurrency(currency);
+        return index >= 0 ? BigDecimal.valueOf(currencyPrices[index], 2) : null;
+    }
+
+    public boolean isPriceDerived(String currency) {
+        int index = indexOfCurrency(currency);
+        return index >= 0 && currencyDerived[index];
+    }
+
+    private int indexOfCurrency(String currency) {
+        for (int i = 0; i < currencyCount; i++) {
+            if (currencyCodes[i].equals(currency)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 24h change in basis points, or 0 when the exchange didn't report an open price
+     */
+    public long getChangeBasisPoints() {
+        if (!has(LAST | OPEN) || openCents == 0) {
+            return 0;
+        }
+        return (lastCents - openCents) * 10000L / openCents;
+    }
+
+    public long getSpreadCents() {
+        return has(BID | ASK) ? askCents - bidCents : 0;
+    }
+
+    public long getWholeVolume() {
+        return volume / VOLUME_SCALE;
+    }
+
+    private static boolean isPresent(String value) {
+        return value != null && !value.isEmpty() && !value.equals("null");
+    }
+
+    /**
+     * Parses a plain or exponent-free decimal string into a fixed-point long with the given number
+     * of fractional digits, truncating any extra digits. Avoids a BigDecimal per field.
+     */
+    static long parseFixed(String value, int scale) {
+        int length = value.length();
+        int i = 0;
+        boolean negative = false;
+        if (value.charAt(0) == '-' || value.charAt(0) == '+') {
+            negative = value.charAt(0) == '-';
+            i++;
+        }
+        long result = 0;
+        int fractionDigits = -1;
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '.') {
+                fractionDigits = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (fractionDigits >= scale) {
+                    continue;
+                }
+                result = result * 10 + (c - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == 'e' || c == 'E') {
+                // Scientific notation is rare enough to take the slow path
+                return new BigDecimal(value).movePointRight(scale).longValue();
+            } else {
+                throw new NumberFormatException("Invalid decimal: " + value);
+            }
+        }
+        for (int d = Math.max(fractionDigits, 0); d < scale; d++) {
+            result *= 10;
+        }
+        return negative ? -result : result;
+    }
+}
@@ -0,0 +1,159 @@
+package com.fiospace.bitcointicker;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Opens many {@code /stream} subscriptions against a {@link RelayServer} from one NIO thread and
+ * reports fan-out latency: the time from the relay stamping {@code "published"} on an event to each
+ * subscriber receiving it. Run it on the relay host so both share a clock.
+ *
+ * Options: {@code --url=http://127.0.0.1:8090 --clients=2000 --duration-s=60}
+ */
+public class RelayLoadTest {
+
+    private static final class Subscriber {
+        final StringBuilder buffer = new StringBuilder();
+        boolean headersDone;
+    }
+
+    private long[] latencies = new long[1 << 16];
+    private int latencyCount;
+    private int connected;
+    private int disconnected;
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://127.0.0.1:8090";
+        int clients = 2000;
+        long durationSeconds = 60;
+        for (String arg : args) {
+            if (arg.startsWith("--url=")) {
+                url = arg.substring("--url=".length());
+            } else if (arg.startsWith("--clients=")) {
+                clients = Integer.parseInt(arg.substring("--clients=".length()));
+            } else if (arg.startsWith("--duration-s=")) {
+                durationSeconds = Long.parseLong(arg.substring("--duration-s=".length()));
+            }
+        }
+        new RelayLoadTest().run(URI.create(url), clients, durationSeconds * 1000);
+    }
+
+    void run(URI uri, int clients, long durationMillis) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(uri.getHost(), uri.getPort() > 0 ? uri.getPort() : 80);
+        byte[] request = ("GET /stream HTTP/1.1\r\nHost: " + uri.getHost() + "\r\nAccept: text/event-stream\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        Selector selector = Selector.open();
+        for (int i = 0; i < clients; i++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(address);
+            channel.register(selector, SelectionKey.OP_CONNECT, new Subscriber());
+        }
+
+        ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+        long end = System.currentTimeMillis() + durationMillis;
+        long nextReport = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < end) {
+            selector.select(500);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                SocketChannel channel = (SocketChannel) key.channel();
+                Subscriber subscriber = (Subscriber) key.attachment();
+                try {
+                    if (key.isConnectable()) {
+                        channel.finishConnect();
+                        // Tiny request; a single write always completes on a fresh socket
+                        channel.write(ByteBuffer.wrap(request));
+                        key.interestOps(SelectionKey.OP_READ);
+                        connected++;
+                    } else if (key.isReadable()) {
+                        readBuffer.clear();
+                        int read = channel.read(readBuffer);
+                        if (read < 0) {
+                            disconnected++;
+                            key.cancel();
+                            channel.close();
+                            continue;
+                        }
+                        long now = System.currentTimeMillis();
+                        subscriber.buffer.append(new String(readBuffer.array(), 0, read, StandardCharsets.UTF_8));
+                        consume(subscriber, now);
+                    }
+                } catch (IOException e) {
+                    disconnected++;
+                    key.cancel();
+                    channel.close();
+                }
+            }
+            if (System.currentTimeMillis() >= nextReport) {
+                nextReport += 5000;
+                System.out.println("connected=" + connected + " disconnected=" + disconnected + " events=" + latencyCount);
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+        report(clients);
+    }
+
+    private void consume(Subscriber subscriber, long now) {
+        StringBuilder buffer = subscriber.buffer;
+        if (!subscriber.headersDone) {
+            int headerEnd = buffer.indexOf("\r\n\r\n");
+            if (headerEnd < 0) {
+                return;
+            }
+            buffer.delete(0, headerEnd + 4);
+            subscriber.headersDone = true;
+        }
+        int eventEnd;
+        while ((eventEnd = buffer.indexOf("\n\n")) >= 0) {
+            String event = buffer.substring(0, eventEnd);
+            buffer.delete(0, eventEnd + 2);
+            int published = event.indexOf("\"published\":");
+            if (published < 0) {
+                continue;
+            }
+            int start = published + "\"published\":".length();
+            int stop = start;
+            while (stop < event.length() && Character.isDigit(event.charAt(stop))) {
+                stop++;
+            }
+            record(now - Long.parseLong(event.substring(start, stop)));
+        }
+    }
+
+    private void record(long latency) {
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[latencyCount++] = latency;
+    }
+
+    private void report(int clients) {
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        System.out.println("clients=" + clients + " connected=" + connected + " disconnected=" + disconnected
+                + " events=" + latencyCount);
+        if (sorted.length == 0) {
+            return;
+        }
+        System.out.println("fan-out latency ms: p50=" + percentile(sorted, 0.50) + " p90=" + percentile(sorted, 0.90)
+                + " p99=" + percentile(sorted, 0.99) + " max=" + sorted[sorted.length - 1]);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+}
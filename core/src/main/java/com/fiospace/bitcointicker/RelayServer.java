@@ -0,0 +1,484 @@
+package com.fiospace.bitcointicker;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless relay that polls the exchanges once per interval and fans the consensus quote out to
+ * any number of screens over HTTP.
+ *
+ * <ul>
+ *   <li>{@code GET /quote} returns the latest quote as JSON.</li>
+ *   <li>{@code GET /quote?since=<seq>} long-polls until a quote newer than {@code seq} is
+ *   published.</li>
+ *   <li>{@code GET /stream} is a Server-Sent Events stream with one {@code quote} event per
+ *   publish.</li>
+ * </ul>
+ *
+ * All connections are served by a single NIO selector thread, so thousands of idle subscribers
+ * cost a socket each rather than a thread. Each event is encoded once and the same bytes are
+ * queued on every subscriber; subscribers that fall more than {@link Config#maxBacklogBytes}
+ * behind are dropped.
+ */
+public class RelayServer {
+
+    public static class Config {
+        public int port = 8090;
+        public long intervalMillis = 10000;
+        public long longPollTimeoutMillis = 30000;
+        public long keepAliveMillis = 15000;
+        public int maxBacklogBytes = 64 * 1024;
+        // Publish a synthetic random walk instead of polling, for load tests
+        public boolean fake;
+    }
+
+    private static final int MODE_REQUEST = 0;
+    private static final int MODE_STREAM = 1;
+    private static final int MODE_LONG_POLL = 2;
+    private static final int MODE_CLOSING = 3;
+
+    private static final byte[] KEEP_ALIVE = ": keep-alive\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Config config;
+    private final ConcurrentLinkedQueue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private final List<Connection> streams = new ArrayList<>();
+    private final List<Connection> longPolls = new ArrayList<>();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ScheduledExecutorService poller;
+    private ExecutorService fetchPool;
+    private volatile boolean running;
+
+    // Selector thread only
+    private long sequence;
+    private byte[] latestJson;
+    private long lastKeepAlive;
+
+    // Poller thread only
+    private long fakeCents = 6_700_000L;
+    private FetchRound lastRound;
+
+    private final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer request = ByteBuffer.allocate(2048);
+        final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        int pendingBytes;
+        int mode = MODE_REQUEST;
+        long deadline;
+        SelectionKey key;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    public RelayServer(Config config) {
+        this.config = config;
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(config.port), 4096);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+
+        Thread selectorThread = new Thread(this::selectLoop, "relay-selector");
+        selectorThread.start();
+
+        fetchPool = Executors.newFixedThreadPool(8);
+        poller = Executors.newSingleThreadScheduledExecutor();
+        poller.scheduleWithFixedDelay(this::pollUpstream, 0, config.intervalMillis, TimeUnit.MILLISECONDS);
+        System.out.println("Relay listening on http://0.0.0.0:" + getPort() + " (/quote, /quote?since=, /stream)");
+    }
+
+    public void stop() {
+        running = false;
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+        if (fetchPool != null) {
+            fetchPool.shutdownNow();
+        }
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Publishes a quote to every subscriber. Safe to call from any thread.
+     */
+    public void publish(Quote quote, int sourceCount) {
+        String json = toJson(quote, sourceCount);
+        selectorTasks.add(() -> broadcast(json));
+        selector.wakeup();
+    }
+
+    // Poller thread: one round across all sources, reduced to a consensus quote
+    private void pollUpstream() {
+        try {
+            Quote consensus = new Quote();
+            if (config.fake) {
+                fakeCents += (long) ((Math.random() - 0.5) * 10_000);
+                consensus.reset("consensus");
+                consensus.setLast(BigDecimal.valueOf(fakeCents, 2).toPlainString());
+                consensus.timestampMillis = System.currentTimeMillis();
+                publish(consensus, 1);
+                return;
+            }
+            // Cancelled fetches that haven't exited yet still hold pool threads and sockets
+            if (lastRound != null && !lastRound.isReleased()) {
+                System.err.println("Relay: skipping round, " + lastRound.getActiveCount() + " fetches from the last one still running");
+                return;
+            }
+            FetchRound round = new FetchRound(fetchPool, config.intervalMillis);
+            lastRound = round;
+            List<Quote> quotes = round.fetchAll(BitcoinPriceWrapper.getConfiguredMarketDataSources());
+            round.finish();
+            if (quotes.isEmpty()) {
+                System.err.println("Relay: no sources answered this round");
+                return;
+            }
+            consensusQuote(quotes, consensus);
+            publish(consensus, quotes.size());
+        } catch (RuntimeException e) {
+            System.err.println("Relay poll failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reduces per-exchange quotes to one: median last and open, best bid and ask, widest
+     * high/low, and summed volume.
+     */
+    static void consensusQuote(List<Quote> quotes, Quote out) {
+        out.reset("consensus");
+        List<BigDecimal> lasts = new ArrayList<>();
+        List<BigDecimal> opens = new ArrayList<>();
+        long bid = 0, ask = Long.MAX_VALUE, high = 0, low = Long.MAX_VALUE, volume = 0;
+        for (Quote quote : quotes) {
+            lasts.add(quote.getLast());
+            if (quote.has(Quote.OPEN)) opens.add(BigDecimal.valueOf(quote.openCents, 2));
+            if (quote.has(Quote.BID)) bid = Math.max(bid, quote.bidCents);
+            if (quote.has(Quote.ASK)) ask = Math.min(ask, quote.askCents);
+            if (quote.has(Quote.HIGH)) high = Math.max(high, quote.highCents);
+            if (quote.has(Quote.LOW)) low = Math.min(low, quote.lowCents);
+            if (quote.has(Quote.VOLUME)) volume += quote.volume;
+        }
+        out.setLast(BitcoinPriceWrapper.consensusPrice(lasts).toPlainString());
+        if (!opens.isEmpty()) out.setOpen(BitcoinPriceWrapper.consensusPrice(opens).toPlainString());
+        if (bid > 0) out.setBid(BigDecimal.valueOf(bid, 2).toPlainString());
+        if (ask != Long.MAX_VALUE) out.setAsk(BigDecimal.valueOf(ask, 2).toPlainString());
+        if (high > 0) out.setHigh(BigDecimal.valueOf(high, 2).toPlainString());
+        if (low != Long.MAX_VALUE) out.setLow(BigDecimal.valueOf(low, 2).toPlainString());
+        if (volume > 0) out.setVolume(BigDecimal.valueOf(volume, 8).toPlainString());
+        out.timestampMillis = System.currentTimeMillis();
+    }
+
+    // Field names match what BitcoinPriceWrapper.parseRelay reads
+    static String toJson(Quote quote, int sourceCount) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"exchange\":\"").append(quote.exchange).append('"')
+                .append(",\"sources\":").append(sourceCount)
+                .append(",\"timestamp\":").append(quote.timestampMillis)
+                .append(",\"published\":").append(System.currentTimeMillis())
+                .append(",\"last\":\"").append(BigDecimal.valueOf(quote.lastCents, 2).toPlainString()).append('"');
+        appendField(json, quote, Quote.BID, "bid", quote.bidCents, 2);
+        appendField(json, quote, Quote.ASK, "ask", quote.askCents, 2);
+        appendField(json, quote, Quote.HIGH, "high", quote.highCents, 2);
+        appendField(json, quote, Quote.LOW, "low", quote.lowCents, 2);
+        appendField(json, quote, Quote.OPEN, "open", quote.openCents, 2);
+        appendField(json, quote, Quote.VWAP, "vwap", quote.vwapCents, 2);
+        appendField(json, quote, Quote.VOLUME, "volume", quote.volume, 8);
+        return json.append('}').toString();
+    }
+
+    private static void appendField(StringBuilder json, Quote quote, int field, String name, long value, int scale) {
+        if (quote.has(field)) {
+            json.append(",\"").append(name).append("\":\"").append(BigDecimal.valueOf(value, scale).toPlainString()).append('"');
+        }
+    }
+
+    // ---- Selector thread ----
+
+    private void selectLoop() {
+        while (running) {
+            try {
+                selector.select(1000);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(connection);
+                        }
+                    }
+                }
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+                housekeeping(System.currentTimeMillis());
+            } catch (IOException e) {
+                System.err.println("Relay selector error: " + e.getMessage());
+            }
+        }
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            // Shutting down
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private void read(Connection connection) {
+        int read;
+        try {
+            if (connection.mode != MODE_REQUEST) {
+                // Subscribers shouldn't send anything; read only to notice the close
+                ByteBuffer discard = ByteBuffer.allocate(256);
+                read = connection.channel.read(discard);
+            } else {
+                read = connection.channel.read(connection.request);
+            }
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            close(connection);
+            return;
+        }
+        if (connection.mode == MODE_REQUEST) {
+            String head = new String(connection.request.array(), 0, connection.request.position(), StandardCharsets.US_ASCII);
+            if (head.contains("\r\n\r\n")) {
+                route(connection, head.substring(0, head.indexOf("\r\n")));
+            } else if (!connection.request.hasRemaining()) {
+                respond(connection, 431, "Request Header Fields Too Large", "text/plain", "too large");
+            }
+        }
+    }
+
+    private void route(Connection connection, String requestLine) {
+        String[] parts = requestLine.split(" ");
+        String target = parts.length > 1 ? parts[1] : "/";
+        String path = target.contains("?") ? target.substring(0, target.indexOf('?')) : target;
+        String query = target.contains("?") ? target.substring(target.indexOf('?') + 1) : "";
+
+        switch (path) {
+            case "/stream":
+                connection.mode = MODE_STREAM;
+                enqueue(connection, ("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\n"
+                        + "Access-Control-Allow-Origin: *\r\nConnection: keep-alive\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                if (latestJson != null) {
+                    enqueue(connection, event(sequence, latestJson));
+                }
+                streams.add(connection);
+                break;
+            case "/quote":
+                long since = -1;
+                for (String param : query.split("&")) {
+                    if (param.startsWith("since=")) {
+                        try {
+                            since = Long.parseLong(param.substring("since=".length()));
+                        } catch (NumberFormatException e) {
+                            since = -1;
+                        }
+                    }
+                }
+                if (latestJson == null || (since >= 0 && since >= sequence)) {
+                    connection.mode = MODE_LONG_POLL;
+                    connection.deadline = System.currentTimeMillis() + config.longPollTimeoutMillis;
+                    longPolls.add(connection);
+                } else {
+                    respondQuote(connection);
+                }
+                break;
+            case "/health":
+                respond(connection, 200, "OK", "text/plain", "ok");
+                break;
+            default:
+                respond(connection, 404, "Not Found", "text/plain", "not found");
+                break;
+        }
+    }
+
+    private void broadcast(String json) {
+        sequence++;
+        latestJson = json.getBytes(StandardCharsets.UTF_8);
+        // Encode once, share the bytes across every subscriber
+        byte[] event = event(sequence, latestJson);
+        for (Connection connection : new ArrayList<>(streams)) {
+            enqueue(connection, event);
+        }
+        for (Connection connection : new ArrayList<>(longPolls)) {
+            longPolls.remove(connection);
+            respondQuote(connection);
+        }
+    }
+
+    private static byte[] event(long sequence, byte[] json) {
+        byte[] prefix = ("id: " + sequence + "\nevent: quote\ndata: ").getBytes(StandardCharsets.US_ASCII);
+        byte[] event = new byte[prefix.length + json.length + 2];
+        System.arraycopy(prefix, 0, event, 0, prefix.length);
+        System.arraycopy(json, 0, event, prefix.length, json.length);
+        event[event.length - 2] = '\n';
+        event[event.length - 1] = '\n';
+        return event;
+    }
+
+    private void housekeeping(long now) {
+        for (Connection connection : new ArrayList<>(longPolls)) {
+            if (now >= connection.deadline) {
+                longPolls.remove(connection);
+                if (latestJson != null) {
+                    respondQuote(connection);
+                } else {
+                    respond(connection, 204, "No Content", "text/plain", "");
+                }
+            }
+        }
+        // SSE comment lines keep proxies and NAT tables from dropping idle streams
+        if (now - lastKeepAlive >= config.keepAliveMillis) {
+            lastKeepAlive = now;
+            for (Connection connection : new ArrayList<>(streams)) {
+                enqueue(connection, KEEP_ALIVE);
+            }
+        }
+    }
+
+    private void respondQuote(Connection connection) {
+        respond(connection, 200, "OK", "application/json",
+                new String(latestJson, StandardCharsets.UTF_8) + "\n", "X-Quote-Seq: " + sequence + "\r\n");
+    }
+
+    private void respond(Connection connection, int status, String reason, String contentType, String body) {
+        respond(connection, status, reason, contentType, body, "");
+    }
+
+    private void respond(Connection connection, int status, String reason, String contentType, String body, String extraHeaders) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + status + " " + reason + "\r\nContent-Type: " + contentType
+                + "\r\nContent-Length: " + bytes.length + "\r\nAccess-Control-Allow-Origin: *\r\n" + extraHeaders
+                + "Connection: close\r\n\r\n";
+        byte[] headBytes = head.getBytes(StandardCharsets.US_ASCII);
+        byte[] response = new byte[headBytes.length + bytes.length];
+        System.arraycopy(headBytes, 0, response, 0, headBytes.length);
+        System.arraycopy(bytes, 0, response, headBytes.length, bytes.length);
+        // Single buffer: the connection closes as soon as its queue drains
+        connection.mode = MODE_CLOSING;
+        enqueue(connection, response);
+    }
+
+    private void enqueue(Connection connection, byte[] data) {
+        if (!connection.channel.isOpen()) {
+            return;
+        }
+        if (connection.pendingBytes + data.length > config.maxBacklogBytes) {
+            // Slow consumer: drop it rather than buffer without bound
+            close(connection);
+            return;
+        }
+        connection.pending.add(ByteBuffer.wrap(data));
+        connection.pendingBytes += data.length;
+        flush(connection);
+    }
+
+    private void flush(Connection connection) {
+        try {
+            while (!connection.pending.isEmpty()) {
+                ByteBuffer head = connection.pending.peek();
+                int written = connection.channel.write(head);
+                connection.pendingBytes -= written;
+                if (head.hasRemaining()) {
+                    connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                connection.pending.poll();
+            }
+            if (connection.mode == MODE_CLOSING) {
+                close(connection);
+            } else if (connection.key.isValid()) {
+                connection.key.interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    private void close(Connection connection) {
+        streams.remove(connection);
+        longPolls.remove(connection);
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+
+    /**
+     * Options: {@code --port=8090 --interval-ms=10000 --fake --base-url=<stand-in url>}
+     */
+    public static void main(String[] args) throws Exception {
+        Config config = new Config();
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                config.port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--interval-ms=")) {
+                config.intervalMillis = Long.parseLong(arg.substring("--interval-ms=".length()));
+            } else if (arg.equals("--fake")) {
+                config.fake = true;
+            } else if (arg.startsWith("--base-url=")) {
+                BitcoinPriceWrapper.setBaseUrlOverride(arg.substring("--base-url=".length()));
+            }
+        }
+        RelayServer relay = new RelayServer(config);
+        Runtime.getRuntime().addShutdownHook(new Thread(relay::stop));
+        relay.start();
+        System.out.println(String.format(Locale.US, "Polling %s every %d ms",
+                config.fake ? "synthetic prices" : "all sources", config.intervalMillis));
+    }
+}
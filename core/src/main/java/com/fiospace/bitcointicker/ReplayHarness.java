@@ -0,0 +1,197 @@
+package com.fiospace.bitcointicker;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a {@link ResponseRecording} through the price pipeline as fast as possible.
+ *
+ * <ul>
+ *   <li>{@code parse} mode feeds recorded bodies straight into the parsers and the consensus
+ *   aggregate, with no I/O, so results are fully deterministic.</li>
+ *   <li>{@code fetch} mode starts a {@link StandInExchangeServer} on loopback and drives the real
+ *   HTTP fetch path against it from several threads.</li>
+ *   <li>{@code depth} mode pushes recorded depth snapshots and stream frames through a fresh
+ *   {@link DepthFeed} per exchange and reports diff throughput.</li>
+ * </ul>
+ *
+ * Usage: {@code ReplayHarness <recording> [parse|fetch|depth] [iterations] [threads]}
+ */
+public class ReplayHarness {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayHarness <recording> [parse|fetch|depth] [iterations] [threads]");
+            return;
+        }
+        List<ResponseRecording.Entry> recording = ResponseRecording.readAll(new File(args[0]));
+        String mode = args.length > 1 ? args[1] : "parse";
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+
+        System.out.println("Loaded " + recording.size() + " responses from " + args[0]);
+        if (mode.equals("fetch")) {
+            replayFetch(recording, iterations, threads);
+        } else if (mode.equals("depth")) {
+            replayDepth(recording, iterations);
+        } else {
+            replayParse(recording, iterations);
+        }
+    }
+
+    /**
+     * Parses every recorded quote body and aggregates each round into a consensus price. Depth
+     * entries are skipped.
+     *
+     * @return checksum of all consensus prices, identical across runs for the same recording
+     */
+    public static BigDecimal replayParse(List<ResponseRecording.Entry> recording, int iterations) {
+        BigDecimal checksum = BigDecimal.ZERO;
+        long parsed = 0;
+        long failed = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            // A round ends as soon as an exchange shows up a second time
+            Set<String> seen = new HashSet<>();
+            List<BigDecimal> round = new ArrayList<>();
+            for (ResponseRecording.Entry entry : recording) {
+                // Order book snapshots and frames are replayed by the depth mode; failed requests
+                // have no body and are replayed by the stand-in server in fetch mode
+                if (entry.exchange.endsWith(DepthFeed.RECORDING_SUFFIX) || entry.status != 200) {
+                    continue;
+                }
+                if (!seen.add(entry.exchange)) {
+                    checksum = checksum.add(BitcoinPriceWrapper.consensusPrice(round));
+                    seen.clear();
+                    seen.add(entry.exchange);
+                    round.clear();
+                }
+                try {
+                    round.add(BitcoinPriceWrapper.parsePrice(entry.exchange, entry.bodyAsString()));
+                    parsed++;
+                } catch (Exception e) {
+                    failed++;
+                }
+            }
+            if (!round.isEmpty()) {
+                checksum = checksum.add(BitcoinPriceWrapper.consensusPrice(round));
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        System.out.println("parse: " + parsed + " bodies (" + failed + " failed) in " + (elapsedNanos / 1_000_000) + " ms, "
+                + (parsed * 1_000_000_000L / Math.max(1, elapsedNanos)) + " bodies/s, checksum " + checksum);
+        return checksum;
+    }
+
+    /**
+     * Rebuilds each recorded order book from its snapshot and stream frames, in capture order.
+     * Entries not recorded by {@link DepthStream} are skipped.
+     *
+     * @return total price-level updates applied, identical across runs for the same recording
+     */
+    public static long replayDepth(List<ResponseRecording.Entry> recording, int iterations) {
+        long messages = 0;
+        long updates = 0;
+        long resyncs = 0;
+        Map<String, DepthFeed> feeds = new HashMap<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            feeds.clear();
+            for (ResponseRecording.Entry entry : recording) {
+                if (!entry.exchange.endsWith(DepthFeed.RECORDING_SUFFIX)) {
+                    continue;
+                }
+                String exchange = entry.exchange.substring(0, entry.exchange.length() - DepthFeed.RECORDING_SUFFIX.length());
+                DepthFeed feed = feeds.get(exchange);
+                if (feed == null) {
+                    feed = DepthFeed.forExchange(exchange);
+                    if (feed == null) {
+                        continue;
+                    }
+                    feeds.put(exchange, feed);
+                }
+                int result;
+                if (entry.status == DepthFeed.STATUS_STREAM_MESSAGE) {
+                    result = feed.onMessage(entry.bodyAsString());
+                } else if (feed.hasRestSnapshot() && entry.status == 200) {
+                    result = ((DepthFeed.RestSnapshotFeed) feed).onSnapshot(entry.bodyAsString());
+                } else {
+                    continue;
+                }
+                if (result == DepthFeed.RESYNC) {
+                    resyncs++;
+                }
+                messages++;
+            }
+            for (DepthFeed feed : feeds.values()) {
+                updates += feed.getBook().getUpdateCount();
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        System.out.println("depth: " + messages + " messages, " + updates + " level updates, " + resyncs + " resyncs in "
+                + (elapsedNanos / 1_000_000) + " ms, " + (messages * 1_000_000_000L / Math.max(1, elapsedNanos)) + " messages/s");
+        for (DepthFeed feed : feeds.values()) {
+            OrderBook book = feed.getBook();
+            if (!book.isEmpty()) {
+                System.out.println("  " + feed.getExchange() + " bid " + BigDecimal.valueOf(book.getBidPrice(0), 2)
+                        + " ask " + BigDecimal.valueOf(book.getAskPrice(0), 2) + " (" + book.getBidCount() + "/"
+                        + book.getAskCount() + " levels)");
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * Runs the full HTTP fetch path against an in-process stand-in server.
+     */
+    public static void replayFetch(List<ResponseRecording.Entry> recording, int iterations, int threads) throws Exception {
+        StandInExchangeServer.Config config = new StandInExchangeServer.Config();
+        config.port = 0;
+        StandInExchangeServer server = new StandInExchangeServer(config, recording);
+        server.start();
+        String previousOverride = BitcoinPriceWrapper.getBaseUrlOverride();
+        BitcoinPriceWrapper.setBaseUrlOverride("http://127.0.0.1:" + server.getPort());
+
+        List<String> exchanges = BitcoinPriceWrapper.getConfiguredMarketDataSources();
+        AtomicLong ok = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < iterations; i++) {
+                pool.execute(() -> {
+                    List<BigDecimal> round = new ArrayList<>();
+                    for (String exchange : exchanges) {
+                        try {
+                            round.add(BitcoinPriceWrapper.fetchPrice(exchange));
+                            ok.incrementAndGet();
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                    if (!round.isEmpty()) {
+                        BitcoinPriceWrapper.consensusPrice(round);
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.HOURS);
+        } finally {
+            BitcoinPriceWrapper.setBaseUrlOverride(previousOverride);
+            server.stop();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        System.out.println("fetch: " + ok.get() + " ok, " + failed.get() + " failed in " + (elapsedNanos / 1_000_000) + " ms, "
+                + (ok.get() * 1_000_000_000L / Math.max(1, elapsedNanos)) + " fetches/s over " + threads + " threads");
+    }
+}
@@ -0,0 +1,115 @@
+package com.fiospace.bitcointicker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact on-disk capture of raw exchange responses, used to replay the fetch/parse pipeline
+ * offline and to feed {@link StandInExchangeServer}.
+ *
+ * The file is a gzip stream of a 4 byte magic and version followed by records of
+ * (timestamp, exchange, HTTP status, body bytes). Bodies of consecutive polls are nearly identical,
+ * so gzip keeps a day of captures small. Failed requests are recorded with an empty body and their
+ * status, or {@link #NO_RESPONSE} when they timed out or never connected.
+ */
+public class ResponseRecording {
+    private static final int MAGIC = 0x42545243; // "BTRC"
+    private static final int VERSION = 1;
+
+    public static final int NO_RESPONSE = 0;
+
+    public static final class Entry {
+        public final long timestampMillis;
+        public final String exchange;
+        public final int status;
+        public final byte[] body;
+
+        Entry(long timestampMillis, String exchange, int status, byte[] body) {
+            this.timestampMillis = timestampMillis;
+            this.exchange = exchange;
+            this.status = status;
+            this.body = body;
+        }
+
+        public String bodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Appends responses to a recording file. Safe to share between fetch threads.
+     */
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private int count;
+
+        public Writer(File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        public synchronized void record(String exchange, long timestampMillis, int status, String body) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            try {
+                out.writeLong(timestampMillis);
+                out.writeUTF(exchange);
+                out.writeShort(status);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                count++;
+            } catch (IOException e) {
+                System.err.println("Failed to record response from " + exchange + ": " + e.getMessage());
+            }
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    public static List<Entry> readAll(File file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a response recording: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported recording version " + version);
+            }
+            while (true) {
+                long timestamp;
+                try {
+                    timestamp = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                String exchange = in.readUTF();
+                int status = in.readUnsignedShort();
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                entries.add(new Entry(timestamp, exchange, status, body));
+            }
+        }
+        return entries;
+    }
+}
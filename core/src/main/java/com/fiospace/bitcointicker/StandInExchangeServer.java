@@ -0,0 +1,305 @@
+package com.fiospace.bitcointicker;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local HTTP server that emulates the eight exchange endpoints used by {@link BitcoinPriceWrapper}.
+ *
+ * Requests are routed by their first path segment (see {@link BitcoinPriceWrapper#setBaseUrlOverride}),
+ * and answered from a {@link ResponseRecording} in round-robin order, or from built-in sample bodies
+ * for exchanges missing from the recording. Recorded failures are answered with their status, and
+ * recorded timeouts ({@link ResponseRecording#NO_RESPONSE}) stall. A request for an exchange's depth
+ * snapshot URL is answered from the snapshots {@link DepthStream} recorded under {@code <exchange>-depth}.
+ * Latency, 5xx errors, 429 rate limiting and stalled connections can be injected on top to reproduce
+ * incidents without touching the live exchanges.
+ *
+ * Binds to loopback unless {@link Config#bindAddress} is set; use {@code --bind=0.0.0.0} to serve a
+ * device on the LAN. Uses a plain {@link ServerSocket} so it runs both on the JVM and on a device.
+ */
+public class StandInExchangeServer {
+
+    public enum LatencyDistribution { FIXED, UNIFORM, EXPONENTIAL }
+
+    public static class Config {
+        public int port = 8089;
+        // Null binds to loopback only
+        public String bindAddress = null;
+        public long latencyMillis = 0;
+        // UNIFORM adds [0, jitter), EXPONENTIAL adds an exponential sample with mean jitter
+        public long jitterMillis = 0;
+        public LatencyDistribution distribution = LatencyDistribution.FIXED;
+        public double errorRate = 0;
+        public double rateLimitRate = 0;
+        public double stallRate = 0;
+        public long stallMillis = 60000;
+        public long seed = 1;
+    }
+
+    private static final String[] EXCHANGES = {
+            "binance", "bitfinex", "bitstamp", "coinbase", "coingecko", "cryptocompare", "gemini", "kraken"
+    };
+
+    private final Config config;
+    private final Map<String, List<ResponseRecording.Entry>> responses = new HashMap<>();
+    private final Map<String, AtomicInteger> cursors = new HashMap<>();
+    // Exchange to the path of its REST depth snapshot, for exchanges with recorded snapshots
+    private final Map<String, String> snapshotPaths = new HashMap<>();
+    private final Random random;
+    private final AtomicLong requestCount = new AtomicLong();
+    private ServerSocket serverSocket;
+    private ExecutorService workers;
+
+    public StandInExchangeServer(Config config, List<ResponseRecording.Entry> recording) {
+        this.config = config;
+        this.random = new Random(config.seed);
+        if (recording != null) {
+            for (ResponseRecording.Entry entry : recording) {
+                // Depth stream frames are served by DepthStream replay, not over HTTP
+                if (entry.status != DepthFeed.STATUS_STREAM_MESSAGE) {
+                    responses.computeIfAbsent(entry.exchange, k -> new ArrayList<>()).add(entry);
+                }
+            }
+        }
+        for (String exchange : EXCHANGES) {
+            if (!responses.containsKey(exchange)) {
+                List<ResponseRecording.Entry> sample = new ArrayList<>();
+                sample.add(new ResponseRecording.Entry(0, exchange, 200,
+                        sampleBody(exchange, "67000.00").getBytes(StandardCharsets.UTF_8)));
+                responses.put(exchange, sample);
+            }
+        }
+        for (String exchange : DepthFeed.getSupportedExchanges()) {
+            DepthFeed feed = DepthFeed.forExchange(exchange);
+            if (feed.hasRestSnapshot() && responses.containsKey(exchange + DepthFeed.RECORDING_SUFFIX)) {
+                snapshotPaths.put(exchange, URI.create(((DepthFeed.RestSnapshotFeed) feed).getSnapshotUrl()).getPath());
+            }
+        }
+        for (String key : responses.keySet()) {
+            cursors.put(key, new AtomicInteger());
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        InetAddress address = config.bindAddress != null
+                ? InetAddress.getByName(config.bindAddress) : InetAddress.getLoopbackAddress();
+        serverSocket = new ServerSocket(config.port, 512, address);
+        workers = Executors.newCachedThreadPool();
+        Thread acceptor = new Thread(this::acceptLoop, "stand-in-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("Stand-in exchange server listening on " + address.getHostAddress() + ":" + getPort());
+    }
+
+    public synchronized void stop() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing stand-in server: " + e.getMessage());
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                workers.execute(() -> handle(socket));
+            } catch (SocketException e) {
+                // Closed by stop()
+                return;
+            } catch (IOException e) {
+                System.err.println("Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+            String requestLine = in.readLine();
+            if (requestLine == null) {
+                return;
+            }
+            // Drain headers; the stand-in doesn't care about them
+            String header;
+            while ((header = in.readLine()) != null && !header.isEmpty()) {
+                // ignore
+            }
+            requestCount.incrementAndGet();
+
+            String[] parts = requestLine.split(" ");
+            String path = parts.length > 1 ? parts[1] : "/";
+            String exchange = path.length() > 1 ? path.substring(1).split("[/?]")[0] : "";
+            String snapshotPath = snapshotPaths.get(exchange);
+            String key = snapshotPath != null && path.substring(1 + exchange.length()).split("\\?")[0].equals(snapshotPath)
+                    ? exchange + DepthFeed.RECORDING_SUFFIX : exchange;
+
+            double roll;
+            long delay;
+            synchronized (random) {
+                roll = random.nextDouble();
+                delay = nextLatency();
+            }
+            sleep(delay);
+
+            OutputStream out = s.getOutputStream();
+            List<ResponseRecording.Entry> candidates = responses.get(key);
+            if (candidates == null) {
+                write(out, 404, "Not Found", "{\"error\":\"unknown exchange\"}".getBytes(StandardCharsets.UTF_8));
+            } else if (roll < config.stallRate) {
+                // Accept the request, then hold the connection without answering
+                sleep(config.stallMillis);
+            } else if (roll < config.stallRate + config.rateLimitRate) {
+                write(out, 429, "Too Many Requests", "{\"error\":\"rate limited\"}".getBytes(StandardCharsets.UTF_8));
+            } else if (roll < config.stallRate + config.rateLimitRate + config.errorRate) {
+                write(out, 500, "Internal Server Error", "{\"error\":\"injected\"}".getBytes(StandardCharsets.UTF_8));
+            } else {
+                int index = Math.floorMod(cursors.get(key).getAndIncrement(), candidates.size());
+                ResponseRecording.Entry entry = candidates.get(index);
+                if (entry.status == ResponseRecording.NO_RESPONSE) {
+                    // Recorded timeout: hold the connection the same way as an injected stall
+                    sleep(config.stallMillis);
+                } else {
+                    write(out, entry.status, reason(entry.status), entry.body);
+                }
+            }
+        } catch (IOException e) {
+            // Client went away mid-response; nothing to do
+        }
+    }
+
+    private long nextLatency() {
+        switch (config.distribution) {
+            case UNIFORM:
+                return config.latencyMillis + (config.jitterMillis > 0 ? (long) (random.nextDouble() * config.jitterMillis) : 0);
+            case EXPONENTIAL:
+                return config.latencyMillis + (long) (-Math.log(1 - random.nextDouble()) * config.jitterMillis);
+            default:
+                return config.latencyMillis;
+        }
+    }
+
+    private static void write(OutputStream out, int status, String reason, byte[] body) throws IOException {
+        String head = "HTTP/1.1 " + status + " " + reason + "\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 404: return "Not Found";
+            case 429: return "Too Many Requests";
+            case 500: return "Internal Server Error";
+            case 502: return "Bad Gateway";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
+            default: return "Status " + status;
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Minimal response body in the shape each exchange returns, used when a recording has no
+     * captures for that exchange.
+     */
+    static String sampleBody(String exchange, String price) {
+        switch (exchange) {
+            case "binance":
+                return "{\"symbol\":\"BTCUSDT\",\"lastPrice\":\"" + price + "\",\"bidPrice\":\"" + price
+                        + "\",\"askPrice\":\"" + price + "\",\"openPrice\":\"" + price + "\",\"volume\":\"100\"}";
+            case "bitfinex":
+                return "[[\"tBTCUSD\"," + price + ",1," + price + ",1,0,0," + price + ",100," + price + "," + price + "]]";
+            case "bitstamp":
+                return "{\"last\":\"" + price + "\",\"high\":\"" + price + "\",\"low\":\"" + price + "\",\"volume\":\"100\"}";
+            case "coinbase":
+                return "{\"data\":{\"amount\":\"" + price + "\",\"base\":\"BTC\",\"currency\":\"USD\"}}";
+            case "coingecko":
+                return "{\"bitcoin\":{\"usd\":" + price + "}}";
+            case "cryptocompare":
+                return "{\"USD\":" + price + "}";
+            case "gemini":
+                return "{\"bid\":\"" + price + "\",\"ask\":\"" + price + "\",\"last\":\"" + price + "\"}";
+            case "kraken":
+                return "{\"error\":[],\"result\":{\"XXBTZUSD\":{\"c\":[\"" + price + "\",\"0.01\"],\"o\":\"" + price + "\"}}}";
+            default:
+                return "{}";
+        }
+    }
+
+    /**
+     * Options: {@code --port=8089 --bind=0.0.0.0 --recording=<file> --latency-ms=50 --jitter-ms=100
+     * --distribution=exponential --error-rate=0.01 --rate-limit-rate=0.05 --stall-rate=0.01
+     * --stall-ms=60000 --seed=1}
+     */
+    public static void main(String[] args) throws Exception {
+        Config config = new Config();
+        List<ResponseRecording.Entry> recording = null;
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            String value = kv.length > 1 ? kv[1] : "";
+            switch (kv[0]) {
+                case "port": config.port = Integer.parseInt(value); break;
+                case "bind": config.bindAddress = value; break;
+                case "recording": recording = ResponseRecording.readAll(new File(value)); break;
+                case "latency-ms": config.latencyMillis = Long.parseLong(value); break;
+                case "jitter-ms": config.jitterMillis = Long.parseLong(value); break;
+                case "distribution": config.distribution = LatencyDistribution.valueOf(value.toUpperCase()); break;
+                case "error-rate": config.errorRate = Double.parseDouble(value); break;
+                case "rate-limit-rate": config.rateLimitRate = Double.parseDouble(value); break;
+                case "stall-rate": config.stallRate = Double.parseDouble(value); break;
+                case "stall-ms": config.stallMillis = Long.parseLong(value); break;
+                case "seed": config.seed = Long.parseLong(value); break;
+                default: System.err.println("Unknown option: " + arg); break;
+            }
+        }
+        StandInExchangeServer server = new StandInExchangeServer(config, recording);
+        server.start();
+        Thread.currentThread().join();
+    }
+}
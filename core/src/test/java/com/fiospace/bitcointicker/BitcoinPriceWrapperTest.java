@@ -0,0 +1,212 @@
+package com.fiospace.bitcointicker;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks every exchange parser's fields and presence bitmask on captured response bodies.
+ */
+public class BitcoinPriceWrapperTest {
+
+    private static final class Case {
+        final String exchange;
+        final String body;
+        final Map<Integer, Long> fields = new LinkedHashMap<>();
+        final Map<String, Long> currencies = new LinkedHashMap<>();
+
+        Case(String exchange, String body) {
+            this.exchange = exchange;
+            this.body = body;
+        }
+
+        Case field(int field, long value) {
+            fields.put(field, value);
+            return this;
+        }
+
+        Case currency(String code, long hundredths) {
+            currencies.put(code, hundredths);
+            return this;
+        }
+    }
+
+    private static final Case[] CASES = {
+            new Case("binance", "{\"symbol\":\"BTCUSDT\",\"priceChange\":\"-120.50000000\",\"priceChangePercent\":\"-0.179\","
+                    + "\"weightedAvgPrice\":\"67210.33421870\",\"prevClosePrice\":\"67330.01000000\",\"lastPrice\":\"67209.51000000\","
+                    + "\"lastQty\":\"0.00150000\",\"bidPrice\":\"67209.50000000\",\"bidQty\":\"3.10000000\",\"askPrice\":\"67209.51000000\","
+                    + "\"askQty\":\"0.50000000\",\"openPrice\":\"67330.01000000\",\"highPrice\":\"67888.00000000\",\"lowPrice\":\"66512.34000000\","
+                    + "\"volume\":\"18234.56789012\",\"quoteVolume\":\"1225633178.71\",\"openTime\":1699913600000,\"closeTime\":1700000000000,"
+                    + "\"firstId\":1,\"lastId\":2,\"count\":2}")
+                    .field(Quote.LAST, 6_720_951L).field(Quote.BID, 6_720_950L).field(Quote.ASK, 6_720_951L)
+                    .field(Quote.HIGH, 6_788_800L).field(Quote.LOW, 6_651_234L).field(Quote.OPEN, 6_733_001L)
+                    .field(Quote.VOLUME, 1_823_456_789_012L).field(Quote.VWAP, 6_721_033L),
+            // ticker/24hr?symbols=[...] when other currencies are shown
+            new Case("binance", "[{\"symbol\":\"BTCUSDT\",\"weightedAvgPrice\":\"67210.33421870\",\"lastPrice\":\"67209.51000000\","
+                    + "\"bidPrice\":\"67209.50000000\",\"askPrice\":\"67209.51000000\",\"openPrice\":\"67330.01000000\","
+                    + "\"highPrice\":\"67888.00000000\",\"lowPrice\":\"66512.34000000\",\"volume\":\"18234.56789012\"},"
+                    + "{\"symbol\":\"BTCEUR\",\"lastPrice\":\"62011.20000000\",\"openPrice\":\"62100.00000000\"}]")
+                    .field(Quote.LAST, 6_720_951L).field(Quote.BID, 6_720_950L).field(Quote.ASK, 6_720_951L)
+                    .field(Quote.HIGH, 6_788_800L).field(Quote.LOW, 6_651_234L).field(Quote.OPEN, 6_733_001L)
+                    .field(Quote.VOLUME, 1_823_456_789_012L).field(Quote.VWAP, 6_721_033L)
+                    .currency("EUR", 6_201_120L),
+            // Older recordings of the unfiltered ticker/price list
+            new Case("binance", "[{\"symbol\":\"ETHBTC\",\"price\":\"0.05\"},{\"symbol\":\"BTCUSDT\",\"price\":\"67000.01\"},"
+                    + "{\"symbol\":\"BTCEUR\",\"price\":\"62011.20\"},{\"symbol\":\"BTCGBP\",\"price\":\"53000.00\"}]")
+                    .field(Quote.LAST, 6_700_001L)
+                    .currency("EUR", 6_201_120L),
+            // Older recordings of ticker/price
+            new Case("binance", "{\"symbol\":\"BTCUSDT\",\"price\":\"67000.01000000\"}")
+                    .field(Quote.LAST, 6_700_001L),
+            // Whole numbers come back as JSON longs, large volumes as doubles printed with an exponent
+            new Case("bitfinex", "[[\"tBTCUSD\",67208,4.5,67209,3.2,-350,-0.0052,67209,12345678.9,67950,66400],"
+                    + "[\"tBTCEUR\",62000.1,1,62001.5,1,-300,-0.0048,62000.5,500.1,62500,61000]]")
+                    .field(Quote.LAST, 6_720_900L).field(Quote.BID, 6_720_800L).field(Quote.ASK, 6_720_900L)
+                    .field(Quote.VOLUME, 1_234_567_890_000_000L).field(Quote.HIGH, 6_795_000L).field(Quote.LOW, 6_640_000L)
+                    .field(Quote.OPEN, 6_755_900L)
+                    .currency("EUR", 6_200_050L),
+            // A row cut short after LAST_PRICE only yields the last price
+            new Case("bitfinex", "[[\"tBTCUSD\",67208,4.5,67209,3.2,-350,-0.0052,67209.519]]")
+                    .field(Quote.LAST, 6_720_951L),
+            new Case("bitstamp", "{\"timestamp\":\"1700000000\",\"open\":\"67330\",\"high\":\"67888\",\"low\":\"66512\","
+                    + "\"last\":\"67209\",\"volume\":\"1834.56789012\",\"vwap\":\"67210.33\",\"bid\":\"67208\",\"ask\":\"67210\","
+                    + "\"open_24\":\"67330\",\"percent_change_24\":\"-0.18\"}")
+                    .field(Quote.LAST, 6_720_900L).field(Quote.BID, 6_720_800L).field(Quote.ASK, 6_721_000L)
+                    .field(Quote.HIGH, 6_788_800L).field(Quote.LOW, 6_651_200L).field(Quote.OPEN, 6_733_000L)
+                    .field(Quote.VOLUME, 183_456_789_012L).field(Quote.VWAP, 6_721_033L),
+            // JSON null and missing fields stay out of the bitmask
+            new Case("bitstamp", "{\"last\":\"67209.00\",\"bid\":null,\"ask\":\"\",\"volume\":\"0.5\"}")
+                    .field(Quote.LAST, 6_720_900L).field(Quote.VOLUME, 50_000_000L),
+            new Case("coinbase", "{\"data\":{\"amount\":\"67209.515\",\"base\":\"BTC\",\"currency\":\"USD\"}}")
+                    .field(Quote.LAST, 6_720_951L),
+            new Case("coingecko", "{\"bitcoin\":{\"usd\":67209.51,\"usd_24h_change\":-0.1794,\"eur\":62011.2,\"eur_24h_change\":-0.2}}")
+                    .field(Quote.LAST, 6_720_951L).field(Quote.OPEN, 6_733_030L)
+                    .currency("EUR", 6_201_120L),
+            new Case("coingecko", "{\"bitcoin\":{\"usd\":67209}}")
+                    .field(Quote.LAST, 6_720_900L),
+            new Case("cryptocompare", "{\"USD\":67209.51,\"EUR\":62011.2,\"JPY\":1.0234567E7}")
+                    .field(Quote.LAST, 6_720_951L)
+                    .currency("EUR", 6_201_120L).currency("JPY", 1_023_456_700L),
+            new Case("gemini", "{\"bid\":\"67208.10\",\"ask\":\"67210.95\",\"volume\":{\"BTC\":\"1234.5678\",\"USD\":\"82953421.12\","
+                    + "\"timestamp\":1700000000000},\"last\":\"67209.51\"}")
+                    .field(Quote.LAST, 6_720_951L).field(Quote.BID, 6_720_810L).field(Quote.ASK, 6_721_095L)
+                    .field(Quote.VOLUME, 123_456_780_000L),
+            new Case("gemini", "{\"last\":\"67209.51\"}")
+                    .field(Quote.LAST, 6_720_951L),
+            new Case("kraken", "{\"error\":[],\"result\":{\"XXBTZUSD\":{\"a\":[\"67210.00000\",\"1\",\"1.000\"],"
+                    + "\"b\":[\"67209.90000\",\"2\",\"2.000\"],\"c\":[\"67209.90000\",\"0.00100000\"],"
+                    + "\"v\":[\"1000.10000000\",\"2345.67890123\"],\"p\":[\"67100.10000\",\"67210.33456\"],\"t\":[100,200],"
+                    + "\"l\":[\"66000.00000\",\"66512.30000\"],\"h\":[\"67800.00000\",\"67888.00000\"],\"o\":\"67330.00000\"}}}")
+                    .field(Quote.LAST, 6_720_990L).field(Quote.BID, 6_720_990L).field(Quote.ASK, 6_721_000L)
+                    .field(Quote.HIGH, 6_788_800L).field(Quote.LOW, 6_651_230L).field(Quote.OPEN, 6_733_000L)
+                    .field(Quote.VOLUME, 234_567_890_123L).field(Quote.VWAP, 6_721_033L),
+            new Case("kraken", "{\"error\":[],\"result\":{\"XXBTZUSD\":{\"c\":[\"67209.90000\",\"0.00100000\"]}}}")
+                    .field(Quote.LAST, 6_720_990L),
+            // Batched pairs, in whatever order Kraken returns them
+            new Case("kraken", "{\"error\":[],\"result\":{\"XBTCHF\":{\"c\":[\"59000.1\",\"0.1\"]},"
+                    + "\"XXBTZEUR\":{\"c\":[\"62011.20000\",\"0.1\"]},"
+                    + "\"XXBTZUSD\":{\"c\":[\"67209.90000\",\"0.00100000\"],\"o\":\"67330.00000\"}}}")
+                    .field(Quote.LAST, 6_720_990L).field(Quote.OPEN, 6_733_000L)
+                    .currency("EUR", 6_201_120L).currency("CHF", 5_900_010L),
+    };
+
+    // Bodies that must fail to parse rather than yield a quote without a price
+    private static final String[][] BROKEN = {
+            {"binance", "{\"symbol\":\"BTCUSDT\"}"},
+            {"bitfinex", "[[\"tBTCUSD\",67208,4.5]]"},
+            {"bitstamp", "{\"high\":\"67888\"}"},
+            {"coinbase", "{\"data\":{}}"},
+            {"coingecko", "{\"ethereum\":{\"usd\":3000}}"},
+            {"cryptocompare", "{\"Response\":\"Error\",\"Message\":\"rate limit\"}"},
+            {"gemini", "{\"bid\":\"67208.10\"}"},
+            {"kraken", "{\"error\":[\"EGeneral:Too many requests\"],\"result\":{}}"},
+            {"kraken", "<html>502 Bad Gateway</html>"},
+    };
+
+    @After
+    public void tearDown() {
+        BitcoinPriceWrapper.setDisplayCurrencies(Collections.singletonList(CurrencyConverter.USD));
+    }
+
+    @Test
+    public void parsers_fillExpectedFields() throws Exception {
+        BitcoinPriceWrapper.setDisplayCurrencies(Arrays.asList("USD", "EUR", "JPY"));
+        for (Case c : CASES) {
+            Quote quote = BitcoinPriceWrapper.parseQuote(c.exchange, c.body, new Quote());
+            String label = c.exchange + " " + c.body.substring(0, Math.min(40, c.body.length()));
+            int expectedMask = 0;
+            for (Map.Entry<Integer, Long> field : c.fields.entrySet()) {
+                expectedMask |= field.getKey();
+                assertEquals(label + " field " + field.getKey(), (long) field.getValue(), valueOf(quote, field.getKey()));
+            }
+            assertEquals(label + " bitmask", expectedMask, quote.getFields());
+            for (Map.Entry<String, Long> currency : c.currencies.entrySet()) {
+                assertTrue(label + " " + currency.getKey(), quote.hasPriceIn(currency.getKey()));
+                assertEquals(label + " " + currency.getKey(), currency.getValue().longValue(),
+                        quote.getPriceIn(currency.getKey()).movePointRight(2).longValueExact());
+                assertFalse(quote.isPriceDerived(currency.getKey()));
+            }
+            if (!c.currencies.containsKey("EUR")) {
+                assertFalse(label + " EUR", quote.hasPriceIn("EUR"));
+            }
+        }
+    }
+
+    @Test
+    public void batchedUrls_askOnlyForListedPairs() {
+        assertEquals("https://api.binance.com/api/v3/ticker/24hr?symbol=BTCUSDT",
+                BitcoinPriceWrapper.binanceUrl(Collections.emptyList()));
+        assertEquals("https://api.binance.com/api/v3/ticker/24hr?symbol=BTCUSDT",
+                BitcoinPriceWrapper.binanceUrl(Arrays.asList("XYZ")));
+        assertEquals("https://api.binance.com/api/v3/ticker/24hr?symbols=%5B%22BTCUSDT%22,%22BTCEUR%22,%22BTCJPY%22%5D",
+                BitcoinPriceWrapper.binanceUrl(Arrays.asList("EUR", "XYZ", "JPY")));
+        assertEquals("https://api.kraken.com/0/public/Ticker?pair=XXBTZUSD",
+                BitcoinPriceWrapper.krakenUrl(Arrays.asList("XYZ")));
+        assertEquals("https://api.kraken.com/0/public/Ticker?pair=XXBTZUSD,XBTEUR,XBTCHF",
+                BitcoinPriceWrapper.krakenUrl(Arrays.asList("EUR", "XYZ", "CHF")));
+    }
+
+    @Test
+    public void parsers_rejectBodiesWithoutAPrice() throws Exception {
+        for (String[] row : BROKEN) {
+            try {
+                BitcoinPriceWrapper.parseQuote(row[0], row[1], new Quote());
+                fail(row[0] + " accepted " + row[1]);
+            } catch (InvocationTargetException e) {
+                assertTrue(row[0] + ": " + e.getCause(), e.getCause() instanceof JSONException);
+            }
+        }
+    }
+
+    @Test
+    public void parseQuote_resetsTheReusedQuote() throws Exception {
+        Quote quote = new Quote();
+        BitcoinPriceWrapper.parseQuote("bitfinex", "[[\"tBTCUSD\",1,1,1,1,0,0,67000,1,1,1],[\"tBTCEUR\",1,1,1,1,0,0,62000,1,1,1]]", quote);
+        BitcoinPriceWrapper.parseQuote("coinbase", "{\"data\":{\"amount\":\"67000\"}}", quote);
+        assertEquals("coinbase", quote.exchange);
+        assertEquals(Quote.LAST, quote.getFields());
+        assertFalse(quote.hasPriceIn("EUR"));
+    }
+
+    private static long valueOf(Quote quote, int field) {
+        switch (field) {
+            case Quote.LAST: return quote.lastCents;
+            case Quote.BID: return quote.bidCents;
+            case Quote.ASK: return quote.askCents;
+            case Quote.HIGH: return quote.highCents;
+            case Quote.LOW: return quote.lowCents;
+            case Quote.OPEN: return quote.openCents;
+            case Quote.VOLUME: return quote.volume;
+            case Quote.VWAP: return quote.vwapCents;
+            default: throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+}
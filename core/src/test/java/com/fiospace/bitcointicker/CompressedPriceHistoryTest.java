@@ -0,0 +1,146 @@
+package com.fiospace.bitcointicker;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks history round trips, range queries, corrupt and truncated files, and compression ratio.
+ */
+public class CompressedPriceHistoryTest {
+    private static final long START = 1_700_000_000_000L;
+    private static final int MINUTES = 90 * 24 * 60;
+
+    // Per-minute random walk around $67k with poll jitter and occasional outages
+    private static long[][] series(int points, long seed) {
+        Random random = new Random(seed);
+        long[] times = new long[points];
+        long[] prices = new long[points];
+        long time = START;
+        long price = 6_700_000L;
+        for (int i = 0; i < points; i++) {
+            time += 60_000 + random.nextInt(2_000) - 1_000;
+            if (random.nextInt(500) == 0) {
+                time += 60_000L * (1 + random.nextInt(30));
+            }
+            price += (long) (random.nextGaussian() * 3_000);
+            times[i] = time;
+            prices[i] = price;
+        }
+        return new long[][]{times, prices};
+    }
+
+    @Test
+    public void readFrom_rejectsCorruptBlockLength() throws Exception {
+        CompressedPriceHistory history = new CompressedPriceHistory();
+        for (int i = 0; i < 200; i++) {
+            history.append(i * 1000L, 6_700_000L + i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        history.writeTo(out);
+        byte[] bytes = out.toByteArray();
+        // First block's data length: 16 byte file header, then 52 bytes of block header before it
+        for (int value : new int[]{-1, Integer.MAX_VALUE}) {
+            ByteBuffer.wrap(bytes).putInt(68, value);
+            try {
+                CompressedPriceHistory.readFrom(new ByteArrayInputStream(bytes));
+                fail("Accepted block length " + value);
+            } catch (IOException expected) {
+                // The caller keeps its empty history
+            }
+        }
+    }
+
+    @Test
+    public void readFrom_rejectsTruncatedBlock() throws Exception {
+        CompressedPriceHistory history = new CompressedPriceHistory();
+        long[][] series = series(100, 5);
+        for (int i = 0; i < 100; i++) {
+            history.append(series[0][i], series[1][i]);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        history.writeTo(out);
+        byte[] bytes = out.toByteArray();
+        int length = ByteBuffer.wrap(bytes).getInt(68);
+        // Shorter than the raw first point, then long enough for it but missing later points
+        for (int value : new int[]{0, 15, 16, length / 2}) {
+            ByteBuffer.wrap(bytes).putInt(68, value);
+            try {
+                CompressedPriceHistory.readFrom(new ByteArrayInputStream(bytes));
+                fail("Accepted block length " + value);
+            } catch (IOException expected) {
+                // The caller discards the file
+            }
+        }
+        // File cut off in the middle of the block data
+        ByteBuffer.wrap(bytes).putInt(68, length);
+        try {
+            CompressedPriceHistory.readFrom(new ByteArrayInputStream(bytes, 0, bytes.length - 10));
+            fail("Accepted a truncated file");
+        } catch (IOException expected) {
+            // EOFException
+        }
+    }
+
+    @Test
+    public void roundTrip_preservesEveryPoint() throws Exception {
+        long[][] data = series(10_000, 1);
+        CompressedPriceHistory history = new CompressedPriceHistory();
+        for (int i = 0; i < data[0].length; i++) {
+            history.append(data[0][i], data[1][i]);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        history.writeTo(out);
+        CompressedPriceHistory restored = CompressedPriceHistory.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(data[0].length, restored.size());
+
+        int[] index = {0};
+        restored.decodeRange(Long.MIN_VALUE, Long.MAX_VALUE, (time, price) -> {
+            assertEquals(data[0][index[0]] / 1000 * 1000, time);
+            assertEquals(data[1][index[0]], price);
+            index[0]++;
+        });
+        assertEquals(data[0].length, index[0]);
+
+        // Appending after a reload continues the partially filled tail block
+        restored.append(data[0][data[0].length - 1] + 60_000, 1L);
+        assertEquals(data[0].length + 1, restored.size());
+    }
+
+    @Test
+    public void decodeRange_touchesOnlyOverlappingBlocks() {
+        long[][] data = series(12_000, 2);
+        CompressedPriceHistory history = new CompressedPriceHistory();
+        for (int i = 0; i < data[0].length; i++) {
+            history.append(data[0][i], data[1][i]);
+        }
+        long from = data[0][6_000] / 1000 * 1000;
+        long to = data[0][6_059];
+        int[] seen = {0};
+        int decoded = history.decodeRange(from, to, (time, price) -> seen[0]++);
+        assertEquals(60, seen[0]);
+        assertTrue("decoded " + decoded + " blocks", decoded <= 2);
+
+        long[][] candles = history.candles(from, to + 1, 15 * 60_000L);
+        assertTrue(candles[0][0] > 0);
+        assertTrue(candles[1][0] >= candles[2][0]);
+    }
+
+    @Test
+    public void compression_beatsThreeToOneOnMinuteQuotes() {
+        long[][] data = series(MINUTES, 3);
+        CompressedPriceHistory history = new CompressedPriceHistory();
+        for (int i = 0; i < MINUTES; i++) {
+            history.append(data[0][i], data[1][i]);
+        }
+        assertEquals(MINUTES, history.size());
+        assertTrue(history.sizeInBytes() * 3 < MINUTES * 16L);
+    }
+}
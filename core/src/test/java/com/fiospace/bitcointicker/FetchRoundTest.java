@@ -0,0 +1,105 @@
+package com.fiospace.bitcointicker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that fetch rounds against a stalling stand-in fall back, keep timely quotes and stay in budget.
+ */
+public class FetchRoundTest {
+    private static final long BUDGET_MILLIS = 400;
+    // Scheduling and loopback overhead allowed on top of the budget
+    private static final long SLACK_MILLIS = 250;
+    private static final int ROUNDS = 5;
+
+    private ExecutorService pool;
+    private StandInExchangeServer server;
+
+    @Before
+    public void setUp() {
+        pool = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        BitcoinPriceWrapper.setBaseUrlOverride(null);
+        if (server != null) {
+            server.stop();
+        }
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void fetchAll_keepsQuotesThatArrivedInTime() throws Exception {
+        startServer(0);
+        FetchRound round = new FetchRound(pool, BUDGET_MILLIS);
+        List<Quote> quotes = round.fetchAll(BitcoinPriceWrapper.getConfiguredMarketDataSources());
+        round.finish();
+        assertEquals(8, quotes.size());
+        assertTrue(round.isReleased());
+    }
+
+    @Test
+    public void fetchFirst_stalledSourcesAreCancelledAtDeadline() throws Exception {
+        startServer(1.0);
+        long start = System.nanoTime();
+        FetchRound round = new FetchRound(pool, BUDGET_MILLIS);
+        Quote quote = round.fetchFirst(Arrays.asList("coinbase", "kraken", "gemini"));
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        assertNull(quote);
+        assertTrue("round took " + elapsed + " ms", elapsed <= BUDGET_MILLIS + SLACK_MILLIS);
+        round.finish();
+        // Each stalled read ended by read timeout or disconnect, so nothing still holds a socket
+        assertTrue(round.isReleased());
+    }
+
+    @Test
+    public void fetchFirst_fallsBackWhenPrimaryFails() throws Exception {
+        startServer(0);
+        FetchRound round = new FetchRound(pool, BUDGET_MILLIS);
+        // No such exchange: fails straight away and leaves the rest of the budget to the fallback
+        Quote quote = round.fetchFirst(Arrays.asList("nosuchexchange", "kraken"));
+        round.finish();
+        assertNotNull(quote);
+        assertEquals("kraken", quote.exchange);
+        assertTrue(round.isReleased());
+    }
+
+    @Test
+    public void fetchAll_roundsWithStallsStayWithinBudget() throws Exception {
+        startServer(0.1);
+        List<String> sources = BitcoinPriceWrapper.getConfiguredMarketDataSources();
+        int quotes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            FetchRound round = new FetchRound(pool, BUDGET_MILLIS);
+            quotes += round.fetchAll(sources).size();
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            round.finish();
+            assertTrue("round " + i + " took " + elapsed + " ms", elapsed <= BUDGET_MILLIS + SLACK_MILLIS);
+            assertTrue("round " + i + " still holds fetches", round.isReleased());
+        }
+        assertTrue(quotes > 0);
+    }
+
+    // Exponential latency with a 50 ms mean; stalled requests are accepted and never answered
+    private void startServer(double stallRate) throws Exception {
+        StandInExchangeServer.Config config = new StandInExchangeServer.Config();
+        config.port = 0;
+        config.stallRate = stallRate;
+        config.stallMillis = 60_000;
+        config.distribution = StandInExchangeServer.LatencyDistribution.EXPONENTIAL;
+        config.jitterMillis = 50;
+        server = new StandInExchangeServer(config, null);
+        server.start();
+        BitcoinPriceWrapper.setBaseUrlOverride("http://127.0.0.1:" + server.getPort());
+    }
+}
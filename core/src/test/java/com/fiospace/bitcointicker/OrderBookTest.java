@@ -0,0 +1,200 @@
+package com.fiospace.bitcointicker;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the order book against a TreeMap, and depth feed resyncs on gaps and bad checksums.
+ */
+public class OrderBookTest {
+    private static final int FRAMES = 2_000;
+    private static final int LEVELS_PER_SIDE = 5;
+
+    @Test
+    public void update_matchesTreeMap() {
+        Random random = new Random(3);
+        OrderBook book = new OrderBook(4096);
+        TreeMap<Long, Long> bids = new TreeMap<>(Collections.reverseOrder());
+        TreeMap<Long, Long> asks = new TreeMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            boolean bid = random.nextBoolean();
+            long price = bid ? 6_700_000L - random.nextInt(2_000) : 6_700_001L + random.nextInt(2_000);
+            long size = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(1_000_000);
+            book.update(bid, price, size);
+            TreeMap<Long, Long> side = bid ? bids : asks;
+            if (size == 0) side.remove(price); else side.put(price, size);
+        }
+        assertSide(bids, book, true);
+        assertSide(asks, book, false);
+    }
+
+    @Test
+    public void update_dropsLevelsBeyondCapacity() {
+        OrderBook book = new OrderBook(3);
+        book.update(true, 100, 1);
+        book.update(true, 300, 1);
+        book.update(true, 200, 1);
+        book.update(true, 50, 1);
+        book.update(true, 400, 1);
+        assertEquals(3, book.getBidCount());
+        assertEquals(400, book.getBidPrice(0));
+        assertEquals(200, book.getBidPrice(2));
+        book.update(true, 100, 0);
+        assertEquals(3, book.getBidCount());
+    }
+
+    @Test
+    public void restSnapshot_onlyForFeedsThatFetchIt() {
+        assertTrue(DepthFeed.forExchange("binance").hasRestSnapshot());
+        assertTrue(DepthFeed.forExchange("bitstamp").hasRestSnapshot());
+        assertFalse(DepthFeed.forExchange("coinbase").hasRestSnapshot());
+        assertFalse(DepthFeed.forExchange("kraken").hasRestSnapshot());
+    }
+
+    @Test
+    public void malformedSnapshot_resyncs() {
+        DepthFeed.RestSnapshotFeed feed = (DepthFeed.RestSnapshotFeed) DepthFeed.forExchange("binance");
+        assertEquals(DepthFeed.RESYNC, feed.onSnapshot("{\"bids\":[]}"));
+        assertFalse(feed.isSynced());
+    }
+
+    @Test
+    public void binance_buffersUntilSnapshotThenDetectsGap() {
+        DepthFeed.RestSnapshotFeed feed = (DepthFeed.RestSnapshotFeed) DepthFeed.forExchange("binance");
+        assertEquals(DepthFeed.IGNORED, feed.onMessage(binanceDiff(95, 99, 6_700_000L, 6_700_100L)));
+        assertEquals(DepthFeed.IGNORED, feed.onMessage(binanceDiff(100, 103, 6_700_001L, 6_700_101L)));
+        assertEquals(DepthFeed.APPLIED, feed.onSnapshot(binanceSnapshot(101, 6_699_900L, 6_700_200L, 10)));
+        assertEquals(103, feed.getBook().getSequence());
+        assertEquals(6_700_001L, feed.getBook().getBidPrice(0));
+        assertEquals(DepthFeed.APPLIED, feed.onMessage(binanceDiff(104, 104, 6_700_002L, 6_700_102L)));
+        assertEquals(DepthFeed.IGNORED, feed.onMessage(binanceDiff(102, 104, 6_700_002L, 6_700_102L)));
+        assertEquals(DepthFeed.RESYNC, feed.onMessage(binanceDiff(110, 111, 6_700_003L, 6_700_103L)));
+        assertFalse(feed.isSynced());
+        assertEquals(1, feed.getResyncCount());
+    }
+
+    @Test
+    public void coinbase_sequenceGapResyncs() {
+        DepthFeed feed = DepthFeed.forExchange("coinbase");
+        assertEquals(DepthFeed.APPLIED, feed.onMessage(coinbase(0, "snapshot", "bid", "67000.00", "1.5")));
+        assertEquals(DepthFeed.APPLIED, feed.onMessage(coinbase(1, "update", "offer", "67001.00", "2")));
+        assertEquals(6_700_100L, feed.getBook().getAskPrice(0));
+        assertEquals(DepthFeed.RESYNC, feed.onMessage(coinbase(3, "update", "bid", "67000.50", "1")));
+        assertEquals(DepthFeed.IGNORED, feed.onMessage(coinbase(0, "update", "bid", "67000.50", "1")));
+    }
+
+    @Test
+    public void kraken_checksumMismatchResyncs() {
+        DepthFeed.Kraken reference = new DepthFeed.Kraken(DepthFeed.Kraken.DEPTH);
+        reference.getBook().update(true, 6_700_000L, 150_000_000L);
+        reference.getBook().update(false, 6_700_010L, 25_000_000L);
+        long checksum = reference.checksum();
+
+        DepthFeed feed = DepthFeed.forExchange("kraken");
+        assertEquals(DepthFeed.APPLIED, feed.onMessage(kraken("snapshot", 67000.0, 1.5, 67000.1, 0.25, checksum)));
+        assertEquals(DepthFeed.RESYNC, feed.onMessage(kraken("update", 67000.0, 1.6, 67000.1, 0.25, checksum)));
+    }
+
+    @Test
+    public void binance_replaysRecordedStreamWithoutGaps() throws Exception {
+        File file = File.createTempFile("depth", ".btrc");
+        file.deleteOnExit();
+        Random random = new Random(11);
+        String key = "binance" + DepthFeed.RECORDING_SUFFIX;
+        long updateId = 1_000;
+        try (ResponseRecording.Writer writer = new ResponseRecording.Writer(file)) {
+            writer.record(key, 0, 200, binanceSnapshot(updateId, 6_699_999L, 6_700_000L, 1_000));
+            for (int i = 0; i < FRAMES; i++) {
+                writer.record(key, i, DepthFeed.STATUS_STREAM_MESSAGE, binanceFrame(random, updateId + 1, updateId + 3));
+                updateId += 3;
+            }
+        }
+        List<ResponseRecording.Entry> recording = ResponseRecording.readAll(file);
+        assertEquals(FRAMES + 1, recording.size());
+
+        // Snapshot, then every frame through the gap check, as DepthStream feeds them
+        DepthFeed.RestSnapshotFeed feed = (DepthFeed.RestSnapshotFeed) DepthFeed.forExchange("binance");
+        for (ResponseRecording.Entry entry : recording) {
+            int result = entry.status == DepthFeed.STATUS_STREAM_MESSAGE
+                    ? feed.onMessage(entry.bodyAsString())
+                    : feed.onSnapshot(entry.bodyAsString());
+            assertNotEquals(DepthFeed.RESYNC, result);
+        }
+        assertEquals(updateId, feed.getBook().getSequence());
+        assertEquals(0, feed.getResyncCount());
+        assertFalse(feed.getBook().isCrossed());
+    }
+
+    private static void assertSide(TreeMap<Long, Long> expected, OrderBook book, boolean bid) {
+        assertEquals(expected.size(), bid ? book.getBidCount() : book.getAskCount());
+        Iterator<Map.Entry<Long, Long>> it = expected.entrySet().iterator();
+        for (int i = 0; it.hasNext(); i++) {
+            Map.Entry<Long, Long> level = it.next();
+            assertEquals((long) level.getKey(), bid ? book.getBidPrice(i) : book.getAskPrice(i));
+            assertEquals((long) level.getValue(), bid ? book.getBidSize(i) : book.getAskSize(i));
+        }
+    }
+
+    private static String cents(long cents) {
+        return (cents / 100) + "." + String.format("%02d", cents % 100);
+    }
+
+    private static String binanceSnapshot(long lastUpdateId, long bestBid, long bestAsk, int levels) {
+        StringBuilder json = new StringBuilder("{\"lastUpdateId\":").append(lastUpdateId).append(",\"bids\":[");
+        for (int i = 0; i < levels; i++) {
+            if (i > 0) json.append(',');
+            json.append("[\"").append(cents(bestBid - i)).append("\",\"1.00000000\"]");
+        }
+        json.append("],\"asks\":[");
+        for (int i = 0; i < levels; i++) {
+            if (i > 0) json.append(',');
+            json.append("[\"").append(cents(bestAsk + i)).append("\",\"1.00000000\"]");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String binanceDiff(long first, long last, long bid, long ask) {
+        return "{\"e\":\"depthUpdate\",\"U\":" + first + ",\"u\":" + last + ",\"b\":[[\"" + cents(bid)
+                + "\",\"0.5\"]],\"a\":[[\"" + cents(ask) + "\",\"0.5\"]]}";
+    }
+
+    // A depthUpdate frame with a few levels per side near a fixed mid, so the book never crosses
+    private static String binanceFrame(Random random, long first, long last) {
+        long mid = 6_700_000L;
+        StringBuilder frame = new StringBuilder("{\"e\":\"depthUpdate\",\"s\":\"BTCUSDT\",\"U\":")
+                .append(first).append(",\"u\":").append(last).append(",\"b\":[");
+        for (int side = 0; side < 2; side++) {
+            if (side == 1) frame.append("],\"a\":[");
+            for (int l = 0; l < LEVELS_PER_SIDE; l++) {
+                long offset = (long) Math.abs(random.nextGaussian() * 500);
+                long price = side == 0 ? mid - 1 - offset : mid + offset;
+                long size = random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(200_000_000);
+                if (l > 0) frame.append(',');
+                frame.append("[\"").append(cents(price)).append("\",\"").append(size / 100_000_000).append('.')
+                        .append(String.format("%08d", size % 100_000_000)).append("\"]");
+            }
+        }
+        return frame.append("]}").toString();
+    }
+
+    private static String coinbase(long sequence, String type, String side, String price, String quantity) {
+        return "{\"channel\":\"l2_data\",\"sequence_num\":" + sequence + ",\"events\":[{\"type\":\"" + type
+                + "\",\"product_id\":\"BTC-USD\",\"updates\":[{\"side\":\"" + side + "\",\"price_level\":\"" + price
+                + "\",\"new_quantity\":\"" + quantity + "\"}]}]}";
+    }
+
+    private static String kraken(String type, double bid, double bidQty, double ask, double askQty, long checksum) {
+        return "{\"channel\":\"book\",\"type\":\"" + type + "\",\"data\":[{\"symbol\":\"BTC/USD\",\"bids\":[{\"price\":"
+                + bid + ",\"qty\":" + bidQty + "}],\"asks\":[{\"price\":" + ask + ",\"qty\":" + askQty
+                + "}],\"checksum\":" + checksum + "}]}";
+    }
+}
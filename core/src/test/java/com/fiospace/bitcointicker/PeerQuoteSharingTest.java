@@ -0,0 +1,196 @@
+package com.fiospace.bitcointicker;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the peer datagram codec and the leader election, without sockets.
+ */
+public class PeerQuoteSharingTest {
+    private static final long START = 1_700_000_000_000L;
+    // Past the startup listen window
+    private static final long SETTLED = START + PeerQuoteSharing.PEER_TIMEOUT_MILLIS + 1;
+    // magic, version, type, node id
+    private static final int HEADER_BYTES = 12;
+
+    private final List<Boolean> changes = new ArrayList<>();
+
+    private PeerQuoteSharing node(long nodeId) {
+        return new PeerQuoteSharing(InetAddress.getLoopbackAddress(), 0, new PeerQuoteSharing.Listener() {
+            @Override
+            public void onQuote(Quote quote) {
+            }
+
+            @Override
+            public void onLeadershipChanged(boolean leader) {
+                changes.add(leader);
+            }
+        }, nodeId, START);
+    }
+
+    private static Quote decode(ByteBuffer encoded, int length) {
+        ByteBuffer in = ByteBuffer.wrap(encoded.array(), HEADER_BYTES, length - HEADER_BYTES);
+        Quote quote = new Quote();
+        PeerQuoteSharing.decodeQuote(in, quote);
+        return quote;
+    }
+
+    @Test
+    public void quote_roundTripsEveryField() {
+        Quote quote = new Quote();
+        quote.reset("kraken");
+        quote.timestampMillis = START;
+        quote.setLast("67209.51");
+        quote.setBid("67209.50");
+        quote.setAsk("67209.52");
+        quote.setHigh("67888");
+        quote.setLow("66512.34");
+        quote.setOpen("67330.01");
+        quote.setVwap("67210.33");
+        quote.setVolume("18234.56789012");
+
+        ByteBuffer encoded = PeerQuoteSharing.encodeQuote(42, quote);
+        assertEquals(42, ByteBuffer.wrap(encoded.array()).getLong(4));
+        Quote decoded = decode(encoded, encoded.position());
+        assertEquals("kraken", decoded.exchange);
+        assertEquals(START, decoded.timestampMillis);
+        assertEquals(quote.getFields(), decoded.getFields());
+        assertEquals(quote.lastCents, decoded.lastCents);
+        assertEquals(quote.bidCents, decoded.bidCents);
+        assertEquals(quote.askCents, decoded.askCents);
+        assertEquals(quote.highCents, decoded.highCents);
+        assertEquals(quote.lowCents, decoded.lowCents);
+        assertEquals(quote.openCents, decoded.openCents);
+        assertEquals(quote.vwapCents, decoded.vwapCents);
+        assertEquals(quote.volume, decoded.volume);
+    }
+
+    @Test
+    public void quote_truncatesLongExchangeNames() {
+        Quote quote = new Quote();
+        quote.reset("relay:consensus-of-binance-bitstamp-and-kraken");
+        quote.setLast("67000");
+        ByteBuffer encoded = PeerQuoteSharing.encodeQuote(1, quote);
+        assertEquals("relay:consensus-of-binance-bitst", decode(encoded, encoded.position()).exchange);
+    }
+
+    @Test
+    public void quote_readsNameLengthUnsigned() {
+        // Longer than the encoder writes, but a valid datagram from a newer peer
+        char[] name = new char[200];
+        Arrays.fill(name, 'x');
+        ByteBuffer in = ByteBuffer.allocate(8 + 4 + 8 * 8 + 1 + name.length);
+        in.putLong(START).putInt(Quote.LAST).putLong(6_700_000L);
+        in.position(in.position() + 7 * 8);
+        in.put((byte) name.length).put(new String(name).getBytes(StandardCharsets.US_ASCII));
+        in.flip();
+        Quote quote = new Quote();
+        PeerQuoteSharing.decodeQuote(in, quote);
+        assertEquals(new String(name), quote.exchange);
+        assertEquals(6_700_000L, quote.lastCents);
+    }
+
+    @Test
+    public void quote_rejectsTruncatedDatagrams() {
+        Quote quote = new Quote();
+        quote.reset("bitstamp");
+        quote.setLast("67000");
+        ByteBuffer encoded = PeerQuoteSharing.encodeQuote(1, quote);
+        int length = encoded.position();
+        try {
+            decode(encoded, length - 3);
+            fail("Decoded a datagram cut inside the exchange name");
+        } catch (IllegalArgumentException expected) {
+            // The receive loop drops it
+        }
+        try {
+            decode(encoded, HEADER_BYTES + 20);
+            fail("Decoded a datagram cut inside the prices");
+        } catch (BufferUnderflowException expected) {
+            // The receive loop drops it
+        }
+    }
+
+    @Test
+    public void startup_listensBeforeClaiming() {
+        PeerQuoteSharing node = node(10);
+        assertFalse(node.electSelf(START + 1000));
+        assertFalse(node.electSelf(START + PeerQuoteSharing.PEER_TIMEOUT_MILLIS - 1));
+        assertTrue(node.electSelf(SETTLED));
+    }
+
+    @Test
+    public void startup_doesNotDeposeALiveLeader() {
+        PeerQuoteSharing node = node(10);
+        node.recordHeartbeat(90, true, START + 500);
+        node.updateLeadership(START + 1000);
+        node.recordHeartbeat(90, true, SETTLED - 100);
+        node.updateLeadership(SETTLED);
+        assertFalse(node.isLeader());
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void noClaimant_lowestIdWins() {
+        PeerQuoteSharing low = node(10);
+        low.recordHeartbeat(20, false, SETTLED);
+        low.recordHeartbeat(80, false, SETTLED);
+        assertTrue(low.electSelf(SETTLED));
+
+        PeerQuoteSharing middle = node(50);
+        middle.recordHeartbeat(20, false, SETTLED);
+        middle.recordHeartbeat(80, false, SETTLED);
+        assertFalse(middle.electSelf(SETTLED));
+    }
+
+    @Test
+    public void incumbent_staysLeaderWhenALowerIdJoins() {
+        PeerQuoteSharing node = node(50);
+        node.updateLeadership(SETTLED);
+        assertTrue(node.isLeader());
+
+        node.recordHeartbeat(5, false, SETTLED + 1000);
+        node.updateLeadership(SETTLED + 1000);
+        assertTrue(node.isLeader());
+        assertEquals(Arrays.asList(true), changes);
+    }
+
+    @Test
+    public void severalClaimants_lowestIdWins() {
+        PeerQuoteSharing node = node(50);
+        node.updateLeadership(SETTLED);
+        assertTrue(node.isLeader());
+
+        // A partition heals and another leader shows up; the higher id steps down
+        node.recordHeartbeat(90, true, SETTLED + 1000);
+        node.updateLeadership(SETTLED + 1000);
+        assertTrue(node.isLeader());
+        node.recordHeartbeat(20, true, SETTLED + 2000);
+        node.updateLeadership(SETTLED + 2000);
+        assertFalse(node.isLeader());
+        assertEquals(Arrays.asList(true, false), changes);
+    }
+
+    @Test
+    public void silentLeader_isReplacedAfterTimeout() {
+        PeerQuoteSharing node = node(50);
+        node.recordHeartbeat(20, true, SETTLED);
+        node.updateLeadership(SETTLED);
+        assertFalse(node.isLeader());
+
+        node.updateLeadership(SETTLED + PeerQuoteSharing.PEER_TIMEOUT_MILLIS);
+        assertFalse(node.isLeader());
+        node.updateLeadership(SETTLED + PeerQuoteSharing.PEER_TIMEOUT_MILLIS + 1);
+        assertTrue(node.isLeader());
+        assertEquals(0, node.getPeerCount());
+    }
+}
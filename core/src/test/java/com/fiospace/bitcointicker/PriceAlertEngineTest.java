@@ -0,0 +1,105 @@
+package com.fiospace.bitcointicker;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks alerts against a naive scan, move and divergence rules, rule edits and spec parsing.
+ */
+public class PriceAlertEngineTest {
+    @Test
+    public void indexedEvaluation_matchesNaiveScan() {
+        Random random = new Random(42);
+        long[] levels = new long[2_000];
+        boolean[] above = new boolean[levels.length];
+        PriceAlertEngine engine = new PriceAlertEngine();
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = 6_000_000L + random.nextInt(2_000_000);
+            above[i] = random.nextBoolean();
+            if (above[i]) engine.addCrossAbove(levels[i]); else engine.addCrossBelow(levels[i]);
+        }
+
+        long previous = 7_000_000L;
+        engine.onTick(previous, 0);
+        for (int t = 1; t < 10_000; t++) {
+            long price = previous + random.nextInt(20_001) - 10_000;
+            int expected = 0;
+            for (int i = 0; i < levels.length; i++) {
+                if (above[i] && previous < levels[i] && levels[i] <= price) expected++;
+                if (!above[i] && price <= levels[i] && levels[i] < previous) expected++;
+            }
+            assertEquals(expected, engine.onTick(price, t * 1000L));
+            previous = price;
+        }
+    }
+
+    @Test
+    public void percentMove_firesOncePerWindow() {
+        PriceAlertEngine engine = new PriceAlertEngine();
+        engine.addPercentMove(500, 60_000); // 5% in one minute
+        assertEquals(0, engine.onTick(10_000_00L, 0));
+        assertEquals(1, engine.onTick(10_600_00L, 30_000));
+        assertEquals(0, engine.onTick(10_700_00L, 40_000));
+    }
+
+    @Test
+    public void divergence_firesWhenSpreadOpens() {
+        PriceAlertEngine engine = new PriceAlertEngine();
+        engine.addDivergence(100); // 1%
+        assertEquals(0, engine.onSourceQuote("coinbase", 10_000_00L, 0));
+        assertEquals(1, engine.onSourceQuote("kraken", 10_200_00L, 0));
+        assertEquals(0, engine.onSourceQuote("kraken", 10_300_00L, 0));
+        assertEquals(0, engine.onSourceQuote("kraken", 10_000_00L, 0));
+        assertEquals(1, engine.onSourceQuote("kraken", 9_800_00L, 0));
+    }
+
+    @Test
+    public void divergence_tracksEachRuleSeparately() {
+        PriceAlertEngine engine = new PriceAlertEngine();
+        engine.addDivergence(100); // 1%
+        engine.addDivergence(300); // 3%
+        engine.onSourceQuote("coinbase", 10_000_00L, 0);
+        assertEquals(1, engine.onSourceQuote("kraken", 10_150_00L, 0));
+        // The wider rule still fires although the narrower one is already open
+        assertEquals(1, engine.onSourceQuote("kraken", 10_400_00L, 0));
+        assertEquals(0, engine.onSourceQuote("kraken", 10_500_00L, 0));
+    }
+
+    @Test
+    public void divergence_ignoresStaleSourcePrices() {
+        PriceAlertEngine engine = new PriceAlertEngine();
+        engine.addDivergence(100); // 1%
+        engine.onSourceQuote("coinbase", 10_000_00L, 0);
+        assertEquals(0, engine.onSourceQuote("kraken", 10_500_00L, PriceAlertEngine.SOURCE_MAX_AGE_MILLIS + 1));
+        assertEquals(1, engine.onSourceQuote("coinbase", 10_000_00L, PriceAlertEngine.SOURCE_MAX_AGE_MILLIS + 2));
+    }
+
+    @Test
+    public void editingRules_keepsStateOfUnchangedRules() {
+        PriceAlertEngine engine = new PriceAlertEngine();
+        engine.addRulesFromSpec("above:100;move:5:1;diverge:1");
+        engine.onTick(90_00L, 0);
+        engine.onSourceQuote("coinbase", 100_00L, 0);
+        assertEquals(1, engine.onSourceQuote("kraken", 110_00L, 0));
+        assertEquals(2, engine.onTick(110_00L, 10_000)); // crosses 100, moves 22%
+
+        // Re-saving the list with one more rule: only the new rule may fire
+        engine.clear();
+        engine.addRulesFromSpec("above:100;move:5:1;diverge:1;above:115");
+        assertEquals(0, engine.onSourceQuote("kraken", 111_00L, 20_000));
+        assertEquals(0, engine.onTick(111_00L, 20_000));
+        assertEquals(1, engine.onTick(116_00L, 30_000));
+    }
+
+    @Test
+    public void spec_reportsMalformedEntries() {
+        PriceAlertEngine engine = new PriceAlertEngine();
+        assertEquals(Arrays.asList("above:lots", "move:5", "sideways:1"),
+                engine.addRulesFromSpec("above:70000;above:lots;move:5;sideways:1;diverge:0.5;"));
+        assertEquals(2, engine.getRuleCount());
+    }
+}
@@ -0,0 +1,86 @@
+package com.fiospace.bitcointicker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks fixed-point parsing of exchange decimals, the presence bitmask and Quote.set.
+ */
+public class QuoteTest {
+
+    // value, scale, expected
+    private static final Object[][] FIXED = {
+            {"67000", 2, 6_700_000L},
+            {"67209.51", 2, 6_720_951L},
+            {"67209.5", 2, 6_720_950L},
+            {".5", 2, 50L},
+            {"+1.25", 2, 125L},
+            // Extra digits are truncated toward zero, not rounded
+            {"67209.519", 2, 6_720_951L},
+            {"0.999", 2, 99L},
+            {"-0.999", 2, -99L},
+            {"-350", 2, -35_000L},
+            {"-0.0052", 2, 0L},
+            {"1234.56789012", 8, 123_456_789_012L},
+            {"0.00000001", 8, 1L},
+            {"0.000000019", 8, 1L},
+            // Scientific notation, as org.json prints large or tiny doubles
+            {"6.72E4", 2, 6_720_000L},
+            {"1.23456789E7", 8, 1_234_567_890_000_000L},
+            {"1E-8", 8, 1L},
+            {"-1.5e2", 2, -15_000L},
+            {"1.999E-2", 2, 1L},
+    };
+
+    @Test
+    public void parseFixed_matchesTable() {
+        for (Object[] row : FIXED) {
+            assertEquals((String) row[0], (long) (Long) row[2], Quote.parseFixed((String) row[0], (Integer) row[1]));
+        }
+    }
+
+    @Test
+    public void parseFixed_rejectsGarbage() {
+        for (String value : new String[]{"12a", "1,000.00", "$5"}) {
+            try {
+                Quote.parseFixed(value, 2);
+                fail("Parsed " + value);
+            } catch (NumberFormatException expected) {
+                // The parser gives up on the whole response
+            }
+        }
+    }
+
+    @Test
+    public void setters_trackPresentFieldsOnly() {
+        Quote quote = new Quote();
+        quote.reset("test");
+        quote.setLast("67209.51");
+        quote.setBid(null);
+        quote.setAsk("");
+        quote.setHigh("null");
+        quote.setVolume("1.5");
+        assertEquals(Quote.LAST | Quote.VOLUME, quote.getFields());
+        assertTrue(quote.has(Quote.LAST | Quote.VOLUME));
+        assertFalse(quote.has(Quote.LAST | Quote.BID));
+        assertEquals(0, quote.getSpreadCents());
+        assertEquals(0, quote.getChangeBasisPoints());
+    }
+
+    @Test
+    public void set_clearsCurrenciesOfThePreviousQuote() {
+        Quote quote = new Quote();
+        quote.reset("kraken");
+        quote.setLast("67000");
+        quote.setPriceIn("EUR", "62000");
+        assertTrue(quote.hasPriceIn("EUR"));
+
+        quote.set("peer:binance", 1_700_000_000_000L, Quote.LAST | Quote.OPEN, 6_800_000L, 0, 0, 0, 0,
+                6_700_000L, 0, 0);
+        assertFalse(quote.hasPriceIn("EUR"));
+        assertNull(quote.getPriceIn("EUR"));
+        assertEquals(Quote.LAST | Quote.OPEN, quote.getFields());
+        assertEquals(149, quote.getChangeBasisPoints());
+    }
+}
@@ -24,4 +24,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "BitcoinTicker"
 include(":app")
+include(":core")
 